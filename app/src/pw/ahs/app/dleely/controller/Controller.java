@@ -105,10 +105,6 @@ public class Controller {
         return text.substring(start, end);
     }
 
-    public String[] parseCSVLine(String line) {
-        return line.split("\",\"");
-    }
-
     public String handleRecentOpenedFiles(String newPath) {
         /*
         Notes:
@@ -121,10 +121,29 @@ public class IOController {
      * @throws java.nio.file.InvalidPathException if the given path is not valid
      */
     public Path zipFiles(boolean replaceExisting, Path zipPath, Path... paths) throws IOException {
+        return zipFiles(replaceExisting, true, zipPath, paths);
+    }
+
+    /**
+     * Zips a list of files into a zip file. Only regular files are zipped. If
+     * directories were provided, they are ignored.
+     *
+     * @param zipPath         the zip file path. will be created if it doesn't exist.
+     * @param paths           files to be zipped
+     * @param replaceExisting true to replace existing files; false to skip (attributes may
+     *                        be modified such as last modified time)
+     * @param compress        true to deflate the files; false to store them as they are,
+     *                        so they can be read in place without inflating
+     * @return the zip file path
+     * @throws java.io.IOException                if I/O error happens
+     * @throws java.nio.file.InvalidPathException if the given path is not valid
+     */
+    public Path zipFiles(boolean replaceExisting, boolean compress, Path zipPath, Path... paths) throws IOException {
         URI uri = URI.create("jar:" + zipPath.toUri().toString());
         Map<String, String> env = new HashMap<>();
         env.put("create", "true");
         env.put("encoding", "UTF-8");
+        env.put("noCompression", "" + !compress);
         FileSystem zipFs = FileSystems.newFileSystem(uri, env);
 
         CopyOption[] opt =
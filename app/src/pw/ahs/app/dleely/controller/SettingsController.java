@@ -32,7 +32,8 @@ public class SettingsController {
         sReopen_Last_File,
         sRemember_Opened_Files,
         sCheck_For_Update_On_Startup,
-        sConfirm_DELETE;
+        sConfirm_DELETE,
+        sCompress_Files;
 
         @Override
         public String toString() {
@@ -93,6 +94,7 @@ public class SettingsController {
         settingsDefault.setProperty(sReopen_Last_File.t(), "true");
         settingsDefault.setProperty(sCheck_For_Update_On_Startup.t(), "true");
         settingsDefault.setProperty(sConfirm_DELETE.t(), "true");
+        settingsDefault.setProperty(sCompress_Files.t(), "false");
     }
 
     public void setSetting(Setting key, String val) {
@@ -138,7 +138,12 @@ public class TextExporter extends Exporter {
             String itemSep = ",\n";
             String tagSep = " ";
 
-            return new TextExportFormatter(header, footer, itemPattern, itemSep, tagSep);
+            return new TextExportFormatter(header, footer, itemPattern, itemSep, tagSep) {
+                @Override
+                protected String escape(String text) {
+                    return escapeJson(text);
+                }
+            };
         }
 
         public static TextExportFormatter getNetscapeFormatter() {
@@ -185,14 +190,59 @@ public class TextExporter extends Exporter {
             return tagSeparator;
         }
 
+        /**
+         * Escapes a text value for the format; text is written as is by default.
+         */
+        protected String escape(String text) {
+            return text;
+        }
+
+        /**
+         * Escapes the quotes, backslashes and control characters of a text so that it can be put between the
+         * quotes of a JSON string.
+         */
+        private static String escapeJson(String text) {
+            StringBuilder sb = null;
+            for (int i = 0; i < text.length(); ++i) {
+                char c = text.charAt(i);
+                String escaped;
+                switch (c) {
+                    case '"':
+                        escaped = "\\\"";
+                        break;
+                    case '\\':
+                        escaped = "\\\\";
+                        break;
+                    case '\n':
+                        escaped = "\\n";
+                        break;
+                    case '\r':
+                        escaped = "\\r";
+                        break;
+                    case '\t':
+                        escaped = "\\t";
+                        break;
+                    default:
+                        escaped = c < ' ' ? String.format("\\u%04x", (int) c) : null;
+                }
+                if (escaped == null) {
+                    if (sb != null) sb.append(c);
+                    continue;
+                }
+                if (sb == null) sb = new StringBuilder(text.length() + 16).append(text, 0, i);
+                sb.append(escaped);
+            }
+            return sb == null ? text : sb.toString();
+        }
+
         public String formatItem(Item item) {
             String i = itemPattern;
             i = i.replace("{id}", (configs.isSkipField(Item.Field.ID) ? "" : "" + item.getId()));
-            i = i.replace("{name}", (configs.isSkipField(Item.Field.NAME) ? "" : item.getName()));
-            i = i.replace("{ref}", (configs.isSkipField(Item.Field.REF) ? "" : item.getRef()));
-            i = i.replace("{info}", (configs.isSkipField(Item.Field.INFO) ? "" : item.getInfo()));
+            i = i.replace("{name}", (configs.isSkipField(Item.Field.NAME) ? "" : escape(item.getName())));
+            i = i.replace("{ref}", (configs.isSkipField(Item.Field.REF) ? "" : escape(item.getRef())));
+            i = i.replace("{info}", (configs.isSkipField(Item.Field.INFO) ? "" : escape(item.getInfo())));
             i = i.replace("{privy}", (configs.isSkipField(Item.Field.PRIVY) ? "" : (item.getPrivy() ? "1" : "0")));
-            i = i.replace("{tags}", (configs.isSkipField(Item.Field.TAGS) ? "" : item.getTagsText(tagSeparator)));
+            i = i.replace("{tags}", (configs.isSkipField(Item.Field.TAGS) ? "" : escape(item.getTagsText(tagSeparator))));
 
             if (configs.isSkipField(Item.Field.DATE_ADD)) {
                 i = i.replace("{dateadd}", "");
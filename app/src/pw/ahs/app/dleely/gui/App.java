@@ -129,7 +129,7 @@ public class App extends Application {
         searchBox.setOnKeyReleased(evt -> {
             if (evt.getCode() == KeyCode.ENTER && evt.isControlDown()) {
                 String text = searchBox.getText().trim();
-                if (text.isEmpty()) return;
+                if (text.isEmpty() || UIHelper.io.isReadOnly()) return;
                 searchBox.clear();
 
                 Item item = new Item(i18n.getString("m.new"), text);
@@ -12,6 +12,7 @@ package pw.ahs.app.dleely.gui.helper;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
@@ -41,7 +42,11 @@ import pw.ahs.app.dleely.gui.UIHelper;
 import pw.ahs.app.dleely.importer.ImportConfigs;
 import pw.ahs.app.dleely.model.Item;
 import pw.ahs.app.dleely.model.Tag;
+import pw.ahs.app.dleely.store.AsyncStore;
+import pw.ahs.app.dleely.store.DateHistogram;
 import pw.ahs.app.dleely.store.H2DBStore;
+import pw.ahs.app.dleely.store.IStore;
+import pw.ahs.app.dleely.store.StoreStats;
 import pw.ahs.app.fxsimplecontrols.Dialogs;
 
 import java.io.File;
@@ -52,14 +57,26 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import static pw.ahs.app.dleely.Globals.*;
+import static pw.ahs.app.dleely.controller.SettingsController.Setting.sCompress_Files;
 import static pw.ahs.app.dleely.controller.SettingsController.Setting.sConfirm_DELETE;
 import static pw.ahs.app.dleely.controller.SettingsController.Setting.sFile_Path;
 
 public class IOHelper {
     private H2DBStore store = null;
+    private final ExecutorService storeExecutor = AsyncStore.newBoundedExecutor(
+            AsyncStore.DEFAULT_THREAD_COUNT, AsyncStore.DEFAULT_QUEUE_CAPACITY);
+    // one search runs at a time, so a search never starts while the one it cancelled is still stopping
+    private final ExecutorService searchExecutor = AsyncStore.newBoundedExecutor(1, AsyncStore.DEFAULT_QUEUE_CAPACITY);
+    private CompletableFuture<Collection<Item>> pendingSearch = null;
+    private final BooleanProperty readOnlyFile = new SimpleBooleanProperty(false);
     private static IOHelper instance = null;
 
     public static IOHelper getInstance() {
@@ -91,6 +108,12 @@ public class IOHelper {
         return store.getPath() != null;
     }
 
+    private H2DBStore newStore(File f) throws Exception {
+        H2DBStore s = new H2DBStore(f.toPath());
+        s.setCompressed(Controller.settings.getSettingBoolean(sCompress_Files));
+        return s;
+    }
+
     public void newFile() {
         if (view.waitForSave()) return;
 
@@ -111,7 +134,7 @@ public class IOHelper {
         }
 
         try {
-            store = new H2DBStore(f.toPath());
+            store = newStore(f);
             if (store.checkInappropriateClose()) {
                 Dialogs.Result result = Dialogs.showYesNoDialog(
                         view.getStage(),
@@ -140,6 +163,17 @@ public class IOHelper {
         Controller.unsaved.setSaved(true);
     }
 
+    /**
+     * @return true while a file is open read-only; the editing actions are disabled meanwhile
+     */
+    public ReadOnlyBooleanProperty readOnlyProperty() {
+        return readOnlyFile;
+    }
+
+    public boolean isReadOnly() {
+        return readOnlyFile.get();
+    }
+
     private void showError(String title, String msg) {
         Dialogs.showMessageDialog(
                 view.getStage(),
@@ -178,24 +212,33 @@ public class IOHelper {
         Stage waitingStage = createWaitingStage("file.working.close");
         ObjectProperty<Exception> e = new SimpleObjectProperty<>();
         BooleanProperty error = new SimpleBooleanProperty(false);
-        new Thread(() -> {
-            try {
-                store.close();
-            } catch (Exception ee) {
+        new AsyncStore(store, storeExecutor).submit(s -> {
+            s.close();
+            return null;
+        }).whenComplete((r, ee) -> {
+            if (ee != null) {
                 error.set(true);
-                e.set(ee);
+                e.set(ee instanceof Exception ? (Exception) ee : new Exception(ee));
             }
             Platform.runLater(waitingStage::hide);
-        }).start();
+        });
         waitingStage.showAndWait();
         if (error.get()) throw e.get();
 
         store = new H2DBStore(null);
         store.open(true, false);
+        readOnlyFile.set(false);
         view.getItems().clear();
     }
 
     public void open(String filePath) {
+        open(filePath, false);
+    }
+
+    /**
+     * @param readOnly true to browse the file in place without extracting it; changes cannot be saved
+     */
+    public void open(String filePath, boolean readOnly) {
         if (view.waitForSave()) return;
 
         File f;
@@ -220,8 +263,10 @@ public class IOHelper {
         }
 
         try {
-            store = new H2DBStore(f.toPath());
-            if (store.checkInappropriateClose()) {
+            store = newStore(f);
+            if (readOnly) {
+                store.openReadOnly();
+            } else if (store.checkInappropriateClose()) {
                 Dialogs.Result result = Dialogs.showYesNoDialog(
                         view.getStage(),
                         i18n.getString("file.error.title"),
@@ -244,6 +289,7 @@ public class IOHelper {
             showError("file.error.title", "file.error.can-not-open");
             return;
         }
+        readOnlyFile.set(store.isReadOnly());
 
         Stage waitingStage = createWaitingStage("file.working.load");
         BooleanProperty state = new SimpleBooleanProperty(true);
@@ -256,14 +302,13 @@ public class IOHelper {
                     });
             }
         });
-        new Thread(() -> {
-            try {
-                store.loadAllItems(items);
-            } catch (Exception e) {
-                state.set(false);
-            }
+        new AsyncStore(store, storeExecutor).submit(s -> {
+            s.loadAllItems(items);
+            return null;
+        }).whenComplete((r, e) -> {
+            if (e != null) state.set(false);
             Platform.runLater(waitingStage::hide);
-        }).start();
+        });
         waitingStage.showAndWait();
 
         if (state.get()) {
@@ -282,8 +327,28 @@ public class IOHelper {
 
         if (newFile || (store == null || store.getPath() == null))
             _saveAs();
-//        else
-//            _save();
+        else
+            _save();
+    }
+
+    private void _save() {
+        if (store.isReadOnly()) return;
+
+        Stage waiting = createWaitingStage("file.working.save");
+        BooleanProperty error = new SimpleBooleanProperty(false);
+        new AsyncStore(store, storeExecutor).submit(s -> {
+            s.save();
+            return null;
+        }).whenComplete((r, e) -> {
+            if (e != null) error.set(true);
+            Platform.runLater(waiting::hide);
+        });
+        waiting.showAndWait();
+
+        if (error.get())
+            showError("file.error.title", "file.error.can-not-save");
+        else
+            Controller.unsaved.setSaved(true);
     }
 
     private void _saveAs() {
@@ -296,28 +361,10 @@ public class IOHelper {
         File f = fc.showSaveDialog(view.getStage());
         if (f == null) return; // not an error, the user just canceled
 
-        final H2DBStore[] tmpStore = new H2DBStore[1];
+        // the file is replaced, so is a working copy left by a crash
+        final H2DBStore tmpStore;
         try {
-            tmpStore[0] = new H2DBStore(f.toPath());
-            if (tmpStore[0].checkInappropriateClose()) {
-                Dialogs.Result result = Dialogs.showYesNoDialog(
-                        view.getStage(),
-                        i18n.getString("file.error.title"),
-                        i18n.getString("file.error.crash"),
-                        i18n.getString("button.recover"),
-                        i18n.getString("button.ignore"),
-                        i18n.getString("button.cancel"),
-                        1
-                );
-                if (result == Dialogs.Result.CANCEL)
-                    return;
-                if (result == Dialogs.Result.YES)
-                    tmpStore[0].open(false, true);
-                else
-                    tmpStore[0].open(true, false);
-            } else {
-                tmpStore[0].open(true, false);
-            }
+            tmpStore = newStore(f);
         } catch (Exception e) {
             showError("file.error.title", "file.error.can-not-create");
             return;
@@ -327,23 +374,15 @@ public class IOHelper {
         final BooleanProperty error = new SimpleBooleanProperty(false);
         new Thread(() -> {
             try {
-                tmpStore[0].addUpdateItems(store.getAllItems(), false);
+                store.saveAs(tmpStore);
+                store = tmpStore;
             } catch (Exception e) {
-                error.set(false);
-                if (tmpStore[0] != null) {
-                    try {
-                        tmpStore[0].close();
-                    } catch (Exception ignored) {
-                    }
-                }
-            }
-
-            if (!error.get()) {
+                error.set(true);
                 try {
-                    store.close();
-                    store = tmpStore[0];
-                } catch (Exception e) {
-                    error.set(false);
+                    tmpStore.close();
+                    // the original is closed once its file is written, so it can be opened again
+                    if (!store.isOpened()) store.open(false, false);
+                } catch (Exception ignored) {
                 }
             }
             Platform.runLater(waiting::hide);
@@ -589,6 +628,7 @@ public class IOHelper {
         TextField tfFile = new TextField();
         Button btnFile = new Button();
         ChoiceBox<FileFormat> cbFile = new ChoiceBox<>();
+        CheckBox chkFolderTags = new CheckBox();
 
         // buttons
         Button btnImport = new Button();
@@ -654,6 +694,7 @@ public class IOHelper {
 
         rbFile.setText(i18n.getString("import.file"));
         rbClipboard.setText(i18n.getString("import.cp"));
+        chkFolderTags.setText(i18n.getString("import.folder-tags"));
         btnFile.setText(i18n.getString("button.browse"));
         cbFile.setConverter(new StringConverter<FileFormat>() {
             @Override
@@ -730,7 +771,7 @@ public class IOHelper {
 
         HBox layoutFile = new HBox(cbFile, tfFile, btnFile);
         HBox.setHgrow(tfFile, Priority.ALWAYS);
-        HBox layoutSrc = new HBox(rbFile, rbClipboard);
+        HBox layoutSrc = new HBox(rbFile, rbClipboard, chkFolderTags);
         layoutSrc.setSpacing(5);
         layout.add(layoutSrc, 0, 17, 2, 1);
         layout.add(layoutFile, 0, 18, 2, 1);
@@ -745,9 +786,11 @@ public class IOHelper {
         ImportConfigs importConfigs = new ImportConfigs();
         tfFile.disableProperty().bind(rbClipboard.selectedProperty());
         btnFile.disableProperty().bind(rbClipboard.selectedProperty());
+        chkFolderTags.disableProperty().bind(cbFile.valueProperty().isNotEqualTo(FileFormat.NETSCAPE));
         Runnable setDefaults = () -> {
             toggleGroup.selectToggle(useClipboard ? rbClipboard : rbFile);
             cbFile.getSelectionModel().selectFirst();
+            chkFolderTags.setSelected(importConfigs.isFolderTags());
             tfDefaultName.setText(i18n.getString("import.default.name.unnamed"));
             taDefaultInfo.clear();
             taDefaultTags.clear();
@@ -854,6 +897,7 @@ public class IOHelper {
             importConfigs.setCollisionOption(Item.Field.DATE_ADD, cbDateAdd.getValue());
             importConfigs.setCollisionOption(Item.Field.DATE_MODIFY, cbDateMod.getValue());
             importConfigs.addCollisionTags(textTag.fromString(taCollisionTags.getText()));
+            importConfigs.setFolderTags(chkFolderTags.isSelected());
 
             // prepare undo
             Collection<Item> added;
@@ -863,6 +907,10 @@ public class IOHelper {
             edited = new HashSet<>();
             cmd = new ImportItemsCommand(added, edited);
 
+            // files may be large, so they are parsed in parallel while writing; clipboard text is small
+            importConfigs.setPipelined(reader == null);
+            importConfigs.setParallel(reader == null);
+
             // call import
             BooleanProperty error = new SimpleBooleanProperty(false);
             Stage waitingStage = createWaitingStage("file.working.import");
@@ -1228,26 +1276,27 @@ public class IOHelper {
             new Thread(() -> {
                 try {
                     if (writer != null) {
-                        store.exportItems(
-                                writer,
-                                cbFile.getValue(),
-                                exportConfigs,
-                                cbExportSelected.getValue()
-                                        ? view.getListView().getSelectionModel().getSelectedItems()
-                                        : store.getAllItems()
-                        );
+                        if (cbExportSelected.getValue())
+                            store.exportItems(
+                                    writer,
+                                    cbFile.getValue(),
+                                    exportConfigs,
+                                    view.getListView().getSelectionModel().getSelectedItems()
+                            );
+                        else
+                            store.exportAllItems(writer, cbFile.getValue(), exportConfigs);
                         Map<DataFormat, Object> cpContent = new HashMap<>();
                         cpContent.put(DataFormat.PLAIN_TEXT, writer.toString());
                         Platform.runLater(() -> Clipboard.getSystemClipboard().setContent(cpContent));
-                    } else
+                    } else if (cbExportSelected.getValue())
                         store.exportItems(
                                 path,
                                 cbFile.getValue(),
                                 exportConfigs,
-                                cbExportSelected.getValue()
-                                        ? view.getListView().getSelectionModel().getSelectedItems()
-                                        : store.getAllItems()
+                                view.getListView().getSelectionModel().getSelectedItems()
                         );
+                    else
+                        store.exportAllItems(path, cbFile.getValue(), exportConfigs);
                 } catch (Exception e) {
                     error.set(true);
                 }
@@ -1267,42 +1316,76 @@ public class IOHelper {
         btnFile.requestFocus();
     }
 
+    /**
+     * Recomputes the statistics in the background; if the snapshot of the store disagrees,
+     * it is rebuilt and the user is told that the statistics shown were out of date.
+     */
+    private void verifyStats(StoreStats snapshot) {
+        new AsyncStore(store, storeExecutor).submit(s -> {
+            if (s.computeStats().equals(snapshot)) return false;
+            s.reloadStats();
+            return true;
+        }).whenComplete((stale, e) -> {
+            if (e != null)
+                e.printStackTrace();
+            else if (stale)
+                Platform.runLater(() -> showError("stats.title", "stats.error.stale"));
+        });
+    }
+
     public void showStats() {
         long countItem;
         long countTag;
         long countUnusedTags;
         long countUntaggedItems;
         Item item;
+        long topItemTagCount;
         Tag tag;
         long topTagItemCount;
         Collection<Tag> top5;
         Map<Long, Long> top5Count;
         Map<LocalDate, Long> dateTimeLongMap;
+        DateHistogram.Bucket timelineBucket = DateHistogram.Bucket.DAY;
 
         try {
-            countItem = store.getItemCount();
-            countTag = store.getTagCount();
-            countUnusedTags = store.getUnusedTagCount();
-            countUntaggedItems = store.getUntaggedItemCount();
-            item = store.getMostTaggedItem();
-            tag = store.getMostUsedTag();
-            if (tag == null)
+            // the snapshot is kept by the store, only the top item and tags are loaded
+            StoreStats stats = store.getStats();
+            countItem = stats.getItemCount();
+            countTag = stats.getTagCount();
+            countUnusedTags = stats.getUnusedTagCount();
+            countUntaggedItems = stats.getUntaggedItemCount();
+            item = stats.getMostTaggedItemId() == NULL_ID ? null : store.getItem(stats.getMostTaggedItemId());
+            topItemTagCount = stats.getMostTaggedItemTagCount();
+            top5Count = stats.getTopTags();
+            if (top5Count.isEmpty()) {
+                top5 = null;
+                tag = null;
                 topTagItemCount = -1;
-            else
-                topTagItemCount = store.getTagItemCount(tag.getId());
-            top5 = store.getTop5Tags();
-            if (top5 == null)
-                top5Count = null;
-            else {
-                long[] ids = new long[top5.size()];
-                int i = 0;
-                for (Tag t : top5) {
-                    ids[i] = t.getId();
-                    i++;
-                }
-                top5Count = store.getTagItemCounts(ids);
+            } else {
+                Map<Long, Tag> tags = new HashMap<>(top5Count.size());
+                for (Tag t : store.getTagsById(top5Count.keySet().stream().mapToLong(Long::longValue).toArray()))
+                    tags.put(t.getId(), t);
+                top5 = new ArrayList<>(top5Count.size());
+                for (long id : top5Count.keySet())
+                    if (tags.containsKey(id)) top5.add(tags.get(id));
+                tag = tags.get(stats.getMostUsedTagId());
+                topTagItemCount = stats.getMostUsedTagItemCount();
             }
             dateTimeLongMap = store.getDateTimeCountMap();
+            if (dateTimeLongMap != null) {
+                // coarser periods keep the timeline readable for libraries spanning years
+                LocalDate first = dateTimeLongMap.keySet().iterator().next();
+                LocalDate last = first;
+                for (LocalDate date : dateTimeLongMap.keySet()) last = date;
+                long days = ChronoUnit.DAYS.between(first, last);
+                if (days > 5 * 365) timelineBucket = DateHistogram.Bucket.YEAR;
+                else if (days > 365) timelineBucket = DateHistogram.Bucket.MONTH;
+                else if (days > 90) timelineBucket = DateHistogram.Bucket.WEEK;
+                if (timelineBucket != DateHistogram.Bucket.DAY)
+                    dateTimeLongMap = store.getDateHistogram(DateHistogram.Field.ADDED, timelineBucket);
+            }
+
+            verifyStats(stats);
         } catch (Exception e) {
             e.printStackTrace();
             return;
@@ -1386,8 +1469,11 @@ public class IOHelper {
             XYChart.Series<String, Number> series = new XYChart.Series<>();
             acTimeline = new AreaChart<>(axisDates, axisNumber);
             acTimeline.getData().add(series);
+            DateTimeFormatter dateFormatter = timelineBucket == DateHistogram.Bucket.YEAR ? DateTimeFormatter.ofPattern("yyyy")
+                    : timelineBucket == DateHistogram.Bucket.MONTH ? DateTimeFormatter.ofPattern("yyyy-MM")
+                    : DateTimeFormatter.ISO_LOCAL_DATE;
             for (LocalDate date : dateTimeLongMap.keySet()) {
-                series.getData().add(new XYChart.Data<>(date.format(DateTimeFormatter.ISO_LOCAL_DATE), dateTimeLongMap.get(date)));
+                series.getData().add(new XYChart.Data<>(date.format(dateFormatter), dateTimeLongMap.get(date)));
             }
             acTimeline.setAlternativeRowFillVisible(true);
             acTimeline.setTitle(i18n.getString("stats.title.timeline"));
@@ -1398,7 +1484,7 @@ public class IOHelper {
         // top item
         VBox layoutTopItem = null;
         if (item != null) {
-            Label lblTopItem = new Label(i18n.getString("stats.top.item") + ": " + item.getTags().size() + " " + i18n.getString("m.tag"));
+            Label lblTopItem = new Label(i18n.getString("stats.top.item") + ": " + topItemTagCount + " " + i18n.getString("m.tag"));
             ItemView itemView = new ItemView(item);
             itemView.setEditable(false);
             layoutTopItem = new VBox(lblTopItem, itemView);
@@ -1467,20 +1553,19 @@ public class IOHelper {
     }
 
     public void search(String query) {
-        ObservableList<Item> items = FXCollections.observableArrayList();
-        items.addListener((ListChangeListener<Item>) c -> {
-            while (c.next()) {
-                if (c.wasAdded()) {
-                    view.getItems().addAll(c.getAddedSubList());
-                }
-            }
-        });
-
         view.getItems().clear();
-        try {
-            store.searchItems(items, query);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+
+        // runs off the FX thread; a search superseded by a newer one is cancelled, and its results are dropped
+        if (pendingSearch != null) pendingSearch.cancel(true);
+        CompletableFuture<Collection<Item>> search = new AsyncStore(store, searchExecutor).searchItems(query);
+        pendingSearch = search;
+        search.whenComplete((items, e) -> Platform.runLater(() -> {
+            if (search != pendingSearch) return;
+            pendingSearch = null;
+            if (e == null)
+                view.getItems().addAll(items);
+            else if (!(e instanceof CancellationException || e instanceof RejectedExecutionException))
+                e.printStackTrace();
+        }));
     }
 }
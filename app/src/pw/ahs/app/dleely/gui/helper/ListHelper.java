@@ -17,6 +17,7 @@ import pw.ahs.app.dleely.command.ICommand;
 import pw.ahs.app.dleely.controller.Controller;
 import pw.ahs.app.dleely.gui.ItemListCell;
 import pw.ahs.app.dleely.gui.OneParamFunction;
+import pw.ahs.app.dleely.gui.UIHelper;
 import pw.ahs.app.dleely.model.Item;
 import pw.ahs.app.dleely.model.Tag;
 
@@ -56,7 +57,7 @@ public class ListHelper {
         listView.setItems(view.getItems());
         listView.setPlaceholder(listPlaceHolder);
         listView.setCellFactory(v -> new ItemListCell(tagClickHandler));
-        listView.setEditable(true);
+        listView.editableProperty().bind(UIHelper.io.readOnlyProperty().not());
         listView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
 //        listView.setOnEditStart(evt -> System.out.println("Editing"));
@@ -65,6 +65,9 @@ public class MenuHelper {
         mnuFileOpen.setAccelerator(KeyCombination.valueOf("shortcut+o"));
         mnuFileOpen.setOnAction(evt -> UIHelper.io.open(""));
 
+        MenuItem mnuFileOpenReadOnly = new MenuItem();
+        mnuFileOpenReadOnly.setOnAction(evt -> UIHelper.io.open("", true));
+
         mnuFileOpenRecent = new Menu();
         mnuFileOpenRecent.setAccelerator(KeyCombination.valueOf("shortcut+shift+o"));
         for (int i = 0; i < SettingsController.RECENT_FILES_LIMIT; ++i) {
@@ -90,6 +93,7 @@ public class MenuHelper {
         MenuItem mnuFileSave = new MenuItem();
         mnuFileSave.setAccelerator(KeyCombination.valueOf("shortcut+s"));
         mnuFileSave.setOnAction(evt -> UIHelper.io.save(false));
+        mnuFileSave.disableProperty().bind(UIHelper.io.readOnlyProperty());
 
         MenuItem mnuFileSaveAs = new MenuItem();
         mnuFileSaveAs.setAccelerator(KeyCombination.valueOf("shortcut+shift+s"));
@@ -98,6 +102,7 @@ public class MenuHelper {
         MenuItem mnuImport = new MenuItem();
         mnuImport.setAccelerator(KeyCombination.valueOf("shortcut+i"));
         mnuImport.setOnAction(evt -> UIHelper.io.importItems(false));
+        mnuImport.disableProperty().bind(UIHelper.io.readOnlyProperty());
 
         MenuItem mnuExport = new MenuItem();
         mnuExport.setAccelerator(KeyCombination.valueOf("shortcut+e"));
@@ -111,6 +116,7 @@ public class MenuHelper {
         menuFile.getItems().addAll(
                 mnuFileNew,
                 mnuFileOpen,
+                mnuFileOpenReadOnly,
                 mnuFileOpenRecent,
                 mnuFileSave,
                 mnuFileSaveAs,
@@ -155,6 +161,7 @@ public class MenuHelper {
             ICommand cmd = new AddItemsCommand(item);
             Controller.undoRedo.executeThenPushCommand(cmd);
         });
+        mnuItemNew.disableProperty().bind(UIHelper.io.readOnlyProperty());
 
         MenuItem mnuItemDel = new MenuItem();
         mnuItemDel.setAccelerator(KeyCombination.valueOf("delete"));
@@ -164,12 +171,12 @@ public class MenuHelper {
         });
         mnuItemDel.disableProperty().bind(new BooleanBinding() {
             {
-                bind(listView.getSelectionModel().selectedIndexProperty());
+                bind(listView.getSelectionModel().selectedIndexProperty(), UIHelper.io.readOnlyProperty());
             }
 
             @Override
             protected boolean computeValue() {
-                return listView.getSelectionModel().getSelectedIndex() < 0;
+                return listView.getSelectionModel().getSelectedIndex() < 0 || UIHelper.io.isReadOnly();
             }
         });
 
@@ -178,13 +185,14 @@ public class MenuHelper {
         mnuItemEdit.setOnAction(evt -> listView.edit(listView.getSelectionModel().getSelectedIndex()));
         mnuItemEdit.disableProperty().bind(new BooleanBinding() {
             {
-                bind(listView.getSelectionModel().selectedIndexProperty());
+                bind(listView.getSelectionModel().selectedIndexProperty(), UIHelper.io.readOnlyProperty());
             }
 
             @Override
             protected boolean computeValue() {
                 return listView.getSelectionModel().getSelectedIndex() < 0
-                        || listView.getSelectionModel().getSelectedIndices().size() != 1;
+                        || listView.getSelectionModel().getSelectedIndices().size() != 1
+                        || UIHelper.io.isReadOnly();
             }
         });
 
@@ -205,6 +213,7 @@ public class MenuHelper {
         MenuItem mnuItemPaste = new MenuItem();
         mnuItemPaste.setAccelerator(KeyCombination.valueOf("shortcut+v"));
         mnuItemPaste.setOnAction(evt -> UIHelper.io.importItems(true));
+        mnuItemPaste.disableProperty().bind(UIHelper.io.readOnlyProperty());
 
         MenuItem mnuUndo = new MenuItem();
         mnuUndo.setAccelerator(KeyCombination.valueOf("shortcut+z"));
@@ -328,6 +337,7 @@ public class MenuHelper {
         OneParamFunction<String> menuLangListener = newLang -> {
             mnuFileNew.setText(i18n.getString("menu.new"));
             mnuFileOpen.setText(i18n.getString("menu.open"));
+            mnuFileOpenReadOnly.setText(i18n.getString("menu.open-read-only"));
             mnuFileOpenRecent.setText(i18n.getString("menu.open-recent"));
             mnuFileSave.setText(i18n.getString("menu.save"));
             mnuFileSaveAs.setText(i18n.getString("menu.save-as"));
@@ -80,6 +80,7 @@ public class SettingsHelper {
         // language
         // check for update
         // confirm delete
+        // compress files
 
         // save
         if (!Controller.settings.save(PREFS_FILE_NAME))
@@ -121,6 +122,9 @@ public class SettingsHelper {
         CheckBox cbConfirmDelete = new CheckBox(i18n.getString("settings.confirm-delete"));
         cbConfirmDelete.setSelected(Controller.settings.getSettingBoolean(sConfirm_DELETE));
 
+        CheckBox cbCompressFiles = new CheckBox(i18n.getString("settings.compress-files"));
+        cbCompressFiles.setSelected(Controller.settings.getSettingBoolean(sCompress_Files));
+
         Button buttonSave = new Button(i18n.getString("button.save"));
         buttonSave.setOnAction(evt -> {
             // lang
@@ -138,6 +142,9 @@ public class SettingsHelper {
             // confirm delete
             Controller.settings.setSetting(sConfirm_DELETE, "" + cbConfirmDelete.isSelected());
 
+            // compress files
+            Controller.settings.setSetting(sCompress_Files, "" + cbCompressFiles.isSelected());
+
             // file path is set on io
 
             stage.hide();
@@ -168,7 +175,8 @@ public class SettingsHelper {
                 cbRememberFilePaths,
                 cbReopenLastFile,
                 cbUpdate,
-                cbConfirmDelete
+                cbConfirmDelete,
+                cbCompressFiles
         );
         layoutCheckBoxes.setAlignment(Pos.BASELINE_LEFT);
         layoutCheckBoxes.setTileAlignment(Pos.BASELINE_LEFT);
@@ -18,6 +18,8 @@ import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 
 public class CsvImporter extends Importer {
 
@@ -25,41 +27,20 @@ public class CsvImporter extends Importer {
         return new CsvImporter(reader) {
             @Override
             protected void peek() throws IOException {
-                String line;
-                String[] values = null;
-                String name = "";
-                String ref = "";
-                while ((line = super.reader.readLine()) != null) {
-                    if (line.isEmpty()) continue;
+                CsvReader csv = super.csv;
+                while (nextRecord("name", "ref")) {
+                    if (csv.getFieldCount() < 7 || csv.isFieldEmpty(0) || csv.isFieldEmpty(1)) continue;
 
-                    if ((values = Controller.util.parseCSVLine(line)).length < 7) continue;
+                    super.item = new Item(csv.getField(0), csv.getField(1));
+                    super.item.setInfo(csv.getField(2));
+                    super.item.setPrivy(csv.fieldEquals(3, "1"));
+                    addTags(4);
 
-                    if ((name = Controller.util.trimQuotes(values[0])).isEmpty()
-                            || (ref = Controller.util.trimQuotes(values[1])).isEmpty()) continue;
-
-                    break;
-                }
-
-                if (line == null) {
-                    super.item = null;
+                    if (!csv.isFieldEmpty(5)) super.item.setDateAdd(Controller.util.toLocalDateTime(csv.getField(5)));
+                    if (!csv.isFieldEmpty(6)) super.item.setDateMod(Controller.util.toLocalDateTime(csv.getField(6)));
                     return;
                 }
-
-                super.item = new Item(name, ref);
-                super.item.setInfo(Controller.util.trimQuotes(values[2]));
-                super.item.setPrivy(Controller.util.trimQuotes(values[3]).equalsIgnoreCase("1"));
-
-                String[] tags = values[4].split(" ");
-                for (String tag : tags) {
-                    tag = Controller.util.trimQuotes(tag);
-                    if (!Tag.isValidTagName(tag)) continue;
-                    super.item.getTags().add(Tag.getInstance(tag));
-                }
-
-                String millis = Controller.util.trimQuotes(values[5]);
-                if (!millis.isEmpty()) super.item.setDateAdd(Controller.util.toLocalDateTime(millis));
-                millis = Controller.util.trimQuotes(values[6]);
-                if (!millis.isEmpty()) super.item.setDateMod(Controller.util.toLocalDateTime(millis));
+                super.item = null;
             }
         };
     }
@@ -72,35 +53,16 @@ public class CsvImporter extends Importer {
         return new CsvImporter(reader) {
             @Override
             protected void peek() throws IOException {
-                String line;
-                String[] values = null;
-                String name = "";
-                String ref = "";
-                while ((line = super.reader.readLine()) != null) {
-                    if (line.isEmpty()) continue;
-
-                    if ((values = Controller.util.parseCSVLine(line)).length < 5) continue;
-
-                    if ((name = Controller.util.trimQuotes(values[0])).isEmpty()
-                            || (ref = Controller.util.trimQuotes(values[1])).isEmpty()) continue;
+                CsvReader csv = super.csv;
+                while (nextRecord("title", "url")) {
+                    if (csv.getFieldCount() < 5 || csv.isFieldEmpty(0) || csv.isFieldEmpty(1)) continue;
 
-                    break;
-                }
-
-                if (line == null) {
-                    super.item = null;
+                    super.item = new Item(csv.getField(0), csv.getField(1));
+                    super.item.setInfo(csv.getField(3));
+                    addTags(2);
                     return;
                 }
-
-                super.item = new Item(name, ref);
-                super.item.setInfo(Controller.util.trimQuotes(values[3]));
-
-                String[] tags = values[2].split(" ");
-                for (String tag : tags) {
-                    tag = Controller.util.trimQuotes(tag);
-                    if (!Tag.isValidTagName(tag)) continue;
-                    super.item.getTags().add(Tag.getInstance(tag));
-                }
+                super.item = null;
             }
         };
     }
@@ -109,17 +71,50 @@ public class CsvImporter extends Importer {
         return getDiigoInstance(Files.newBufferedReader(path, Charset.forName("utf-8")));
     }
 
+    protected final CsvReader csv;
+    private final Collection<String> tagNames;
+    private boolean firstRecord;
+
     private CsvImporter(Reader reader) throws IOException {
         super(reader);
+        csv = new CsvReader(super.reader);
+        tagNames = new ArrayList<>();
+        firstRecord = true;
         peek();
     }
 
-    private CsvImporter(Path path) throws IOException {
-        super(path);
-        peek();
+    protected void peek() throws IOException {
     }
 
-    protected void peek() throws IOException {
+    /**
+     * Reads the next record, skipping the header if this is the first record.
+     *
+     * @param headers the first two fields of the header
+     * @return false if there are no more records
+     */
+    protected boolean nextRecord(String... headers) throws IOException {
+        if (!csv.nextRecord()) return false;
+        if (firstRecord) {
+            firstRecord = false;
+            if (csv.getFieldCount() >= headers.length) {
+                boolean header = true;
+                for (int i = 0; i < headers.length && header; ++i) header = csv.fieldEquals(i, headers[i]);
+                if (header) return csv.nextRecord();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the space separated tags of the specified field of the current record to the current item.
+     */
+    protected void addTags(int field) {
+        tagNames.clear();
+        csv.splitField(field, ' ', tagNames);
+        for (String tag : tagNames) {
+            if (!Tag.isValidTagName(tag)) continue;
+            super.item.getTags().add(Tag.getInstance(tag));
+        }
     }
 
     @Override
@@ -130,4 +125,12 @@ public class CsvImporter extends Importer {
         peek();
         return i;
     }
+
+    /**
+     * Closes the reader; narrowed to an {@link IOException}, as nothing else is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        csv.close();
+    }
 }
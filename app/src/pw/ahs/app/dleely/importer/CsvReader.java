@@ -0,0 +1,180 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A streaming reader of comma separated records as described by RFC 4180.
+ * <p>
+ * Quoted fields may contain commas, line breaks and quotes escaped by doubling them.
+ * A quote inside a quoted field that is not followed by a comma, a line break or another quote is kept as is,
+ * as older exports did not escape quotes. Records end with CR, LF or CRLF; empty lines are skipped.
+ * <p>
+ * Input is read in blocks and the fields of the current record are kept in one buffer that is reused for
+ * every record, so a string is only created for a field that is asked for.
+ */
+public class CsvReader implements AutoCloseable {
+    private static final int BLOCK_SIZE = 8192;
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final Reader reader;
+    private final char[] block = new char[BLOCK_SIZE];
+    private int blockPos = 0;
+    private int blockEnd = 0;
+    private boolean skipLineFeed = false;
+
+    // the content of every field of the current record, back to back
+    private char[] chars = new char[256];
+    private int charCount = 0;
+    // the end of each field in chars; a field starts where the previous one ends
+    private int[] fieldEnds = new int[16];
+    private int fieldCount = 0;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next record, replacing the fields of the current one.
+     *
+     * @return false if there are no more records
+     */
+    public boolean nextRecord() throws IOException {
+        charCount = 0;
+        fieldCount = 0;
+        int state = FIELD_START;
+        boolean empty = true;
+
+        while (true) {
+            if (blockPos == blockEnd && !fill()) {
+                if (empty) return false;
+                endField();
+                return true;
+            }
+            char c = block[blockPos++];
+
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') continue;
+            }
+
+            if (state == QUOTED) {
+                if (c == '"') state = QUOTE_IN_QUOTED;
+                else append(c);
+                continue;
+            }
+
+            if (c == '\r' || c == '\n') {
+                skipLineFeed = c == '\r';
+                if (empty) continue;
+                endField();
+                return true;
+            }
+            empty = false;
+
+            if (c == ',') {
+                endField();
+                state = FIELD_START;
+            } else if (state == FIELD_START && c == '"') {
+                state = QUOTED;
+            } else if (state == QUOTE_IN_QUOTED) {
+                // an escaped quote, or a stray one
+                append('"');
+                if (c != '"') append(c);
+                state = QUOTED;
+            } else {
+                append(c);
+                state = UNQUOTED;
+            }
+        }
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    private int fieldStart(int i) {
+        return i == 0 ? 0 : fieldEnds[i - 1];
+    }
+
+    public String getField(int i) {
+        checkIndex(i);
+        return new String(chars, fieldStart(i), fieldEnds[i] - fieldStart(i));
+    }
+
+    public boolean isFieldEmpty(int i) {
+        checkIndex(i);
+        return fieldEnds[i] == fieldStart(i);
+    }
+
+    /**
+     * Compares a field with a string without creating a string for the field.
+     */
+    public boolean fieldEquals(int i, String text) {
+        checkIndex(i);
+        int start = fieldStart(i);
+        if (fieldEnds[i] - start != text.length()) return false;
+        for (int j = 0; j < text.length(); ++j)
+            if (chars[start + j] != text.charAt(j)) return false;
+        return true;
+    }
+
+    /**
+     * Adds the non-empty parts of a field, as separated by the specified character, to a collection.
+     */
+    public void splitField(int i, char separator, Collection<String> parts) {
+        checkIndex(i);
+        int start = fieldStart(i);
+        int end = fieldEnds[i];
+        for (int j = start; j <= end; ++j) {
+            if (j < end && chars[j] != separator) continue;
+            if (j > start) parts.add(new String(chars, start, j - start));
+            start = j + 1;
+        }
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= fieldCount)
+            throw new IndexOutOfBoundsException("field " + i + " of " + fieldCount);
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(block, 0, block.length);
+        } while (n == 0);
+        blockPos = 0;
+        blockEnd = Math.max(n, 0);
+        return n > 0;
+    }
+
+    private void append(char c) {
+        if (charCount == chars.length) chars = Arrays.copyOf(chars, chars.length * 2);
+        chars[charCount++] = c;
+    }
+
+    private void endField() {
+        if (fieldCount == fieldEnds.length) fieldEnds = Arrays.copyOf(fieldEnds, fieldEnds.length * 2);
+        fieldEnds[fieldCount++] = charCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
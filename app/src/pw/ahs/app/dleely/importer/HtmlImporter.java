@@ -18,166 +18,181 @@ import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.regex.Matcher;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.regex.Pattern;
 
+/**
+ * Imports the links of an HTML document, such as a Netscape bookmark file.
+ * <p>
+ * The document is read one token at a time, so a browser export of any size is imported in bounded memory.
+ * Links may carry the attributes of a Netscape bookmark, and a link followed by a &lt;DD&gt; takes its text as info.
+ * The folders (&lt;H3&gt; followed by &lt;DL&gt;) that enclose a link can be added to it as tags.
+ */
 public class HtmlImporter extends Importer {
-    private static final Pattern NAME_PATTERN = Pattern.compile("(?i)<A[^>]*>([^<]*)</A>");
-    private static final Pattern REF_PATTERN = Pattern.compile("(?i)HREF=\"([^\"]*)\"");
-    private static final Pattern INFO_PATTERN = Pattern.compile("(?i)<DD>([^\n]*)");
-    private static final Pattern PRIVY_PATTERN = Pattern.compile("(?i)PRIVATE=\"(\\d)\"");
-    private static final Pattern TAGS_PATTERN = Pattern.compile("(?i)TAGS=\"([^\"]*)\"");
-    private static final Pattern DATE_ADD_PATTERN = Pattern.compile("(?i)ADD_DATE=\"([^\"]*)\"");
-    private static final Pattern DATE_MODIFY_PATTERN = Pattern.compile("(?i)LAST_MODIFIED=\"([^\"]*)\"");
-    private static final Pattern LINK_PATTERN = Pattern.compile("(?i)<\\s*a\\s*href=[\"']([^\"']*)[\"'][^>]*>([^<]*)<\\s*/\\s*a\\s*>");
+    private static final Pattern NON_WORD_PATTERN = Pattern.compile("(?U)\\W+");
+    // dates below this are in seconds, as most browsers export them, rather than in milliseconds
+    private static final long MAX_SECONDS = 100_000_000_000L;
 
     public static HtmlImporter getNetscapeInstance(Reader reader) throws IOException {
-        return new HtmlImporter(reader) {
-            @Override
-            protected void peek() throws IOException {
-                String line;
-                if (this.lastLine == null)
-                    line = super.reader.readLine();
-                else {
-                    line = this.lastLine;
-                    this.lastLine = null;
-                }
-                String name = "";
-                String ref = "";
-                Matcher nameMatcher;
-                Matcher refMatcher;
-                do {
-                    if (line.isEmpty()) continue;
-
-                    nameMatcher = NAME_PATTERN.matcher(line);
-                    refMatcher = REF_PATTERN.matcher(line);
-
-                    if (!nameMatcher.find() || !refMatcher.find()) continue;
-
-                    name = nameMatcher.group(1);
-                    ref = refMatcher.group(1);
-
-                    if (name.isEmpty() || ref.isEmpty()) continue;
-
-                    break;
-                } while ((line = super.reader.readLine()) != null);
-
-                if (line == null) {
-                    super.item = null;
-                    return;
-                }
-
-                super.item = new Item(name, ref);
-
-                Matcher matcher;
-
-                matcher = PRIVY_PATTERN.matcher(line);
-                if (matcher.find()) super.item.setPrivy(matcher.group(1).equalsIgnoreCase("1"));
-
-                matcher = TAGS_PATTERN.matcher(line);
-                if (matcher.find()) {
-                    String[] tags = matcher.group(1).split(",");
-                    for (String tag : tags) {
-                        if (!Tag.isValidTagName(tag)) continue;
-                        super.item.getTags().add(Tag.getInstance(tag));
-                    }
-                }
-
-                matcher = DATE_ADD_PATTERN.matcher(line);
-                if (matcher.find() && !matcher.group(1).isEmpty())
-                    super.item.setDateAdd(Controller.util.toLocalDateTime(matcher.group(1)));
-
-                matcher = DATE_MODIFY_PATTERN.matcher(line);
-                LocalDateTime dateMod = null;
-                if (matcher.find() && !matcher.group(1).isEmpty())
-                    dateMod = Controller.util.toLocalDateTime(matcher.group(1));
-
-                line = super.reader.readLine();
-                if (line == null) return;
-                matcher = INFO_PATTERN.matcher(line);
-                if (matcher.find()) super.item.setInfo(matcher.group(1));
-                else this.lastLine = line;
+        return getNetscapeInstance(reader, false);
+    }
 
-                if (dateMod != null) super.item.setDateMod(dateMod);
-            }
-        };
+    /**
+     * @param folderTags whether the names of the folders enclosing a link are added to it as tags
+     */
+    public static HtmlImporter getNetscapeInstance(Reader reader, boolean folderTags) throws IOException {
+        return new HtmlImporter(reader, folderTags);
     }
 
     public static HtmlImporter getNetscapeInstance(Path path) throws IOException {
         return getNetscapeInstance(Files.newBufferedReader(path, Charset.forName("utf-8")));
     }
 
-    protected String lastLine;
-    private int lastLineIndex;
+    protected final HtmlTokenizer html;
+    private final boolean folderTags;
+    // the tag names of the enclosing folders, innermost first; empty for a list that is not a named folder
+    private final Deque<String> folders;
+    private String folderName;
+    private HtmlTokenizer.Token pushedBack;
 
     public HtmlImporter(Reader reader) throws IOException {
-        super(reader);
-        init();
+        this(reader, false);
     }
 
     public HtmlImporter(Path path) throws IOException {
-        super(path);
-        init();
+        this(Files.newBufferedReader(path, Charset.forName("utf-8")), false);
     }
 
-    private void init() throws IOException {
-        this.lastLine = null;
-        this.lastLineIndex = 0;
+    private HtmlImporter(Reader reader, boolean folderTags) throws IOException {
+        super(reader);
+        this.html = new HtmlTokenizer(super.reader);
+        this.folderTags = folderTags;
+        this.folders = new ArrayDeque<>();
+        this.folderName = "";
+        this.pushedBack = null;
         peek();
     }
 
     protected void peek() throws IOException {
-        if (lastLine == null)
-            newPeek();
-        else
-            nextPeek();
+        HtmlTokenizer.Token token;
+        while ((token = nextToken()) != HtmlTokenizer.Token.END) {
+            if (token == HtmlTokenizer.Token.START_TAG) {
+                if (html.isTag("a")) {
+                    if (readItem()) return;
+                } else if (html.isTag("h3")) {
+                    folderName = toTagName(readTextUntil("h3"));
+                } else if (html.isTag("dl")) {
+                    folders.push(folderName);
+                    folderName = "";
+                }
+            } else if (token == HtmlTokenizer.Token.END_TAG && html.isTag("dl") && !folders.isEmpty()) {
+                folders.pop();
+            }
+        }
+        super.item = null;
     }
 
-    private void newPeek() throws IOException {
-        String line;
-        String name = "";
-        String ref = "";
-        Matcher matcher;
-        while ((line = super.reader.readLine()) != null) {
-            if (line.isEmpty()) continue;
+    /**
+     * Reads a link whose start tag was just read, and the info that follows it, into a new item.
+     *
+     * @return false if the link has no name or no ref
+     */
+    private boolean readItem() throws IOException {
+        // the attributes are gone once the name is read
+        String ref = html.getAttribute("href");
+        String privy = html.getAttribute("private");
+        String tags = html.getAttribute("tags");
+        LocalDateTime dateAdd = toLocalDateTime(html.getAttribute("add_date"));
+        LocalDateTime dateMod = toLocalDateTime(html.getAttribute("last_modified"));
+        String name = readTextUntil("a").trim();
+        if (ref == null || ref.isEmpty() || name.isEmpty()) return false;
 
-            matcher = LINK_PATTERN.matcher(line);
-
-            while (matcher.find()) {
-                name = matcher.group(2);
-                ref = matcher.group(1);
-                if (name.isEmpty() || ref.isEmpty()) continue;
-                break;
+        super.item = new Item(name, ref);
+        if (privy != null) super.item.setPrivy(privy.equals("1"));
+        if (tags != null) {
+            for (String tag : tags.split(",")) {
+                tag = tag.trim();
+                if (!Tag.isValidTagName(tag)) continue;
+                super.item.getTags().add(Tag.getInstance(tag));
             }
-
-            if (name.isEmpty() || ref.isEmpty()) continue;
-
-            lastLineIndex = matcher.end();
-            lastLine = line;
-
-            break;
+        }
+        if (folderTags) {
+            for (String folder : folders)
+                if (!folder.isEmpty()) super.item.getTags().add(Tag.getInstance(folder));
+        }
+        if (dateAdd != null) super.item.setDateAdd(dateAdd);
+
+        HtmlTokenizer.Token token = nextToken();
+        while (token == HtmlTokenizer.Token.TEXT && html.getText().trim().isEmpty()) token = nextToken();
+        if (token == HtmlTokenizer.Token.START_TAG && html.isTag("dd")) {
+            token = nextToken();
+            if (token == HtmlTokenizer.Token.TEXT) super.item.setInfo(html.getText());
+            else pushedBack = token;
+        } else {
+            pushedBack = token;
         }
 
+        if (dateMod != null) super.item.setDateMod(dateMod);
+        return true;
+    }
 
-        if (line == null) {
-            super.item = null;
-            return;
+    /**
+     * Reads the text up to the end tag of the specified element, or up to the start of a link, folder or list if
+     * the element is never closed.
+     */
+    private String readTextUntil(String tagName) throws IOException {
+        StringBuilder text = new StringBuilder();
+        HtmlTokenizer.Token token;
+        while ((token = nextToken()) != HtmlTokenizer.Token.END) {
+            if (token == HtmlTokenizer.Token.TEXT) {
+                if (text.length() < HtmlTokenizer.MAX_TEXT_LENGTH) text.append(html.getText());
+            } else if (token == HtmlTokenizer.Token.END_TAG) {
+                if (html.isTag(tagName)) break;
+            } else if (html.isTag("a") || html.isTag("h3") || html.isTag("dl") || html.isTag("dt")) {
+                pushedBack = token;
+                break;
+            }
         }
+        return text.toString();
+    }
 
-        super.item = new Item(name, ref);
+    private HtmlTokenizer.Token nextToken() throws IOException {
+        if (pushedBack == null) return html.next();
+        HtmlTokenizer.Token token = pushedBack;
+        pushedBack = null;
+        return token;
     }
 
-    private void nextPeek() throws IOException {
-        Matcher matcher = LINK_PATTERN.matcher(lastLine);
-        if (matcher.find(lastLineIndex)) {
-            super.item = new Item(matcher.group(2), matcher.group(1));
-            lastLineIndex = matcher.end();
-        } else {
-            lastLine = null;
-            lastLineIndex = 0;
-            newPeek();
+    /**
+     * @return the folder name with every run of characters not allowed in a tag name replaced by an underscore,
+     * or an empty string if nothing is left
+     */
+    private static String toTagName(String folderName) {
+        String name = NON_WORD_PATTERN.matcher(folderName.trim()).replaceAll("_");
+        int start = 0;
+        int end = name.length();
+        while (start < end && name.charAt(start) == '_') ++start;
+        while (end > start && name.charAt(end - 1) == '_') --end;
+        name = name.substring(start, end);
+        return Tag.isValidTagName(name) ? name : "";
+    }
+
+    /**
+     * @return the date of a time stamp in seconds or milliseconds, or null if it is missing or not a number
+     */
+    private static LocalDateTime toLocalDateTime(String timeStamp) {
+        if (timeStamp == null || timeStamp.isEmpty()) return null;
+        long time;
+        try {
+            time = Long.parseLong(timeStamp.trim());
+        } catch (NumberFormatException e) {
+            return null;
         }
+        if (time < MAX_SECONDS) time *= 1000;
+        return Controller.util.toLocalDateTime(new Timestamp(time));
     }
 
     @Override
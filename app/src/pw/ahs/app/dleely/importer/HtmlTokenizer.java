@@ -0,0 +1,275 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A streaming, pull-based tokenizer of loose HTML such as Netscape bookmark files.
+ * <p>
+ * Each call to {@link #next()} scans the input up to the end of the next tag or run of text; the attributes of a
+ * tag are parsed in the same scan. Comments and declarations are skipped, and character references are decoded.
+ * <p>
+ * Texts and attribute values longer than {@link #MAX_TEXT_LENGTH} are truncated, so memory stays bounded whatever
+ * the input.
+ */
+public class HtmlTokenizer implements AutoCloseable {
+
+    public enum Token {
+        START_TAG, END_TAG, TEXT, END
+    }
+
+    public static final int MAX_TEXT_LENGTH = 64 * 1024;
+    private static final int BLOCK_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] block = new char[BLOCK_SIZE];
+    private int blockPos = 0;
+    private int blockEnd = 0;
+
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder reference = new StringBuilder();
+    private String tagName = "";
+    private final List<String> attributeNames = new ArrayList<>();
+    private final List<String> attributeValues = new ArrayList<>();
+
+    public HtmlTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next token.
+     */
+    public Token next() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) return Token.END;
+
+            if (c != '<') {
+                unread();
+                text.setLength(0);
+                readText();
+                return Token.TEXT;
+            }
+
+            c = read();
+            if (c == '!' || c == '?') {
+                skipDeclaration();
+            } else if (c == '/') {
+                readTagName(read());
+                skipPast('>');
+                return Token.END_TAG;
+            } else if (isLetter(c)) {
+                readTagName(c);
+                readAttributes();
+                return Token.START_TAG;
+            } else {
+                // a lone '<' is text
+                if (c != -1) unread();
+                text.setLength(0);
+                text.append('<');
+                readText();
+                return Token.TEXT;
+            }
+        }
+    }
+
+    /**
+     * @return the text of the current text token, with character references decoded
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * @return the name of the current tag in lower case
+     */
+    public String getTagName() {
+        return tagName;
+    }
+
+    public boolean isTag(String name) {
+        return tagName.equals(name);
+    }
+
+    /**
+     * @param name an attribute name in lower case
+     * @return the value of the attribute of the current start tag, null if it does not have it
+     */
+    public String getAttribute(String name) {
+        for (int i = 0; i < attributeNames.size(); ++i)
+            if (attributeNames.get(i).equals(name)) return attributeValues.get(i);
+        return null;
+    }
+
+    private void readText() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<') {
+                unread();
+                break;
+            }
+            if (c == '&') appendReference(text);
+            else append(text, (char) c);
+        }
+    }
+
+    private void readTagName(int c) throws IOException {
+        StringBuilder name = new StringBuilder();
+        while (c != -1 && !isSpace(c) && c != '>' && c != '/') {
+            append(name, Character.toLowerCase((char) c));
+            c = read();
+        }
+        if (c != -1) unread();
+        tagName = name.toString();
+    }
+
+    private void readAttributes() throws IOException {
+        attributeNames.clear();
+        attributeValues.clear();
+        while (true) {
+            int c = read();
+            while (isSpace(c) || c == '/') c = read();
+            if (c == -1 || c == '>') return;
+
+            StringBuilder name = new StringBuilder();
+            while (c != -1 && !isSpace(c) && c != '=' && c != '>' && c != '/') {
+                append(name, Character.toLowerCase((char) c));
+                c = read();
+            }
+            while (isSpace(c)) c = read();
+
+            StringBuilder value = new StringBuilder();
+            if (c == '=') {
+                c = read();
+                while (isSpace(c)) c = read();
+                if (c == '"' || c == '\'') {
+                    int quote = c;
+                    while ((c = read()) != -1 && c != quote) {
+                        if (c == '&') appendReference(value);
+                        else append(value, (char) c);
+                    }
+                } else {
+                    while (c != -1 && !isSpace(c) && c != '>') {
+                        if (c == '&') appendReference(value);
+                        else append(value, (char) c);
+                        c = read();
+                    }
+                    if (c != -1) unread();
+                }
+            } else if (c != -1) {
+                unread();
+            }
+            attributeNames.add(name.toString());
+            attributeValues.add(value.toString());
+        }
+    }
+
+    /**
+     * Decodes a character reference whose '&amp;' was just read; anything else is kept as is.
+     */
+    private void appendReference(StringBuilder sb) throws IOException {
+        reference.setLength(0);
+        int c;
+        while ((c = read()) != -1 && reference.length() < 10 && (isLetter(c) || Character.isDigit(c) || c == '#'))
+            reference.append((char) c);
+        boolean terminated = c == ';';
+        if (c != -1 && !terminated) unread();
+
+        int code = -1;
+        String ref = reference.toString();
+        if (ref.startsWith("#x") || ref.startsWith("#X")) code = parseCode(ref.substring(2), 16);
+        else if (ref.startsWith("#")) code = parseCode(ref.substring(1), 10);
+        else if (ref.equals("amp")) code = '&';
+        else if (ref.equals("lt")) code = '<';
+        else if (ref.equals("gt")) code = '>';
+        else if (ref.equals("quot")) code = '"';
+        else if (ref.equals("apos")) code = '\'';
+        else if (ref.equals("nbsp")) code = ' ';
+
+        if (code == -1) {
+            append(sb, '&');
+            for (int i = 0; i < ref.length(); ++i) append(sb, ref.charAt(i));
+            if (terminated) append(sb, ';');
+        } else {
+            for (char ch : Character.toChars(code)) append(sb, ch);
+        }
+    }
+
+    private static int parseCode(String digits, int radix) {
+        try {
+            int code = Integer.parseInt(digits, radix);
+            return Character.isValidCodePoint(code) ? code : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void skipDeclaration() throws IOException {
+        int c = read();
+        if (c == '-') {
+            // a comment ends with "-->"
+            int dashes = 0;
+            while ((c = read()) != -1) {
+                if (c == '>' && dashes >= 2) return;
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+        } else if (c != '>') {
+            skipPast('>');
+        }
+    }
+
+    private void skipPast(char end) throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && c != end);
+    }
+
+    private static void append(StringBuilder sb, char c) {
+        if (sb.length() < MAX_TEXT_LENGTH) sb.append(c);
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f';
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private int read() throws IOException {
+        if (blockPos == blockEnd) {
+            int n;
+            do {
+                n = reader.read(block, 0, block.length);
+            } while (n == 0);
+            if (n < 0) return -1;
+            blockPos = 0;
+            blockEnd = n;
+        }
+        return block[blockPos++];
+    }
+
+    /**
+     * Steps back one character; only valid right after {@link #read()} returned a character.
+     */
+    private void unread() {
+        --blockPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
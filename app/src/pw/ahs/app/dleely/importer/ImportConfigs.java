@@ -25,6 +25,10 @@ public class ImportConfigs {
     private final Collection<Tag> collisionTags;
     private final Map<Item.Field, CollisionOption> collisionOptions;
 
+    private boolean pipelined;
+    private boolean parallel;
+    private boolean folderTags;
+
     public ImportConfigs() {
         Item.Field[] fields = Item.Field.values();
 
@@ -43,6 +47,10 @@ public class ImportConfigs {
         collisionOptions.put(Item.Field.TAGS, CollisionOption.MERGE);
         collisionOptions.put(Item.Field.DATE_ADD, CollisionOption.SKIP);
         collisionOptions.put(Item.Field.DATE_MODIFY, CollisionOption.SKIP);
+
+        pipelined = false;
+        parallel = false;
+        folderTags = false;
     }
 
     public String getDefaultName() {
@@ -113,6 +121,39 @@ public class ImportConfigs {
         return collisionOptions.get(f);
     }
 
+    /**
+     * @return true if parsing, collision resolution and writing run concurrently as separate stages
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean state) {
+        this.pipelined = state;
+    }
+
+    /**
+     * @return true if CSV files are split into chunks that are parsed in parallel
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean state) {
+        this.parallel = state;
+    }
+
+    /**
+     * @return true if the folders of imported bookmarks are added to them as tags
+     */
+    public boolean isFolderTags() {
+        return folderTags;
+    }
+
+    public void setFolderTags(boolean state) {
+        this.folderTags = state;
+    }
+
     public Item resolve(Item oldItem, Item newItem) {
         // if not equal, return the new one (to be inserted)
         if (!oldItem.equals(newItem)) return newItem;
@@ -35,6 +35,15 @@ public abstract class Importer implements AutoCloseable {
         this.count = 0;
     }
 
+    /**
+     * For importers that do not read the input as one stream of text; {@link #getReader()} returns null.
+     */
+    protected Importer() {
+        this.reader = null;
+        this.item = null;
+        this.count = 0;
+    }
+
     public Importer(Path path) throws IOException {
         this(Files.newBufferedReader(path, Charset.forName("UTF-8")));
     }
@@ -74,6 +83,6 @@ public abstract class Importer implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
-        reader.close();
+        if (reader != null) reader.close();
     }
 }
@@ -18,96 +18,32 @@ import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class JsonImporter extends Importer {
-    private static final Pattern NAME_PATTERN = Pattern.compile("(?i)\"name\":\"([^\"]*)\"");
-    private static final Pattern REF_PATTERN = Pattern.compile("(?i)\"ref\":\"([^\"]*)\"");
-    private static final Pattern INFO_PATTERN = Pattern.compile("(?i)\"info\":\"([^\"]*)\"");
-    private static final Pattern PRIVY_PATTERN = Pattern.compile("(?i)\"privy\":\"([^\"]*)\"");
-    private static final Pattern TAGS_PATTERN = Pattern.compile("(?i)\"tags\":\"([^\"]*)\"");
-    private static final Pattern DATE_ADD_PATTERN = Pattern.compile("(?i)\"dateadd\":\"([^\"]*)\"");
-    private static final Pattern DATE_MODIFY_PATTERN = Pattern.compile("(?i)\"datemod\":\"([^\"]*)\"");
 
     public static JsonImporter getDleelyInstance(Reader reader) throws IOException {
         return new JsonImporter(reader) {
             @Override
             protected void peek() throws IOException {
-                String line;
-                Matcher nameMatcher;
-                Matcher refMatcher;
-                String name;
-                String ref;
-                String values;
-                while (true) {
-                    while ((line = super.reader.readLine()) != null) {
-                        if (line.contains("{")) break;
-                    }
-                    if (line == null) {
-                        super.item = null;
-                        return;
-                    }
-
-                    StringBuilder obj = new StringBuilder(line);
-                    while ((line = super.reader.readLine()) != null) {
-                        obj.append(line);
-                        if (line.contains("}")) break;
-                    }
-                    if (line == null) {
-                        super.item = null;
-                        return;
-                    }
-
-                    values = obj.toString().replaceAll("[\\t\\n\\r]", "");
-                    nameMatcher = NAME_PATTERN.matcher(values);
-                    refMatcher = REF_PATTERN.matcher(values);
-                    if (!nameMatcher.find() || !refMatcher.find()) continue;
-
-                    name = nameMatcher.group(1);
-                    ref = refMatcher.group(1);
-                    if (!name.isEmpty() && !ref.isEmpty()) break;
+                JsonTokenizer.Token token;
+                while ((token = super.json.next()) != JsonTokenizer.Token.END) {
+                    // anything else is the array around the items
+                    if (token == JsonTokenizer.Token.BEGIN_OBJECT && readItem()) return;
                 }
-
-                super.item = new Item(name, ref);
-
-                Matcher matcher = INFO_PATTERN.matcher(values);
-                if (matcher.find()) super.item.setInfo(matcher.group(1));
-
-                matcher = PRIVY_PATTERN.matcher(values);
-                if (matcher.find()) super.item.setPrivy(matcher.group(1).equalsIgnoreCase("1"));
-
-                matcher = TAGS_PATTERN.matcher(values);
-                if (matcher.find()) {
-                    String[] tags = matcher.group(1).split(" ");
-                    for (String tag : tags) {
-                        if (!Tag.isValidTagName(tag)) continue;
-                        super.item.getTags().add(Tag.getInstance(tag));
-                    }
-                }
-
-                matcher = DATE_ADD_PATTERN.matcher(values);
-                if (matcher.find() && !matcher.group(1).isEmpty())
-                    super.item.setDateAdd(Controller.util.toLocalDateTime(matcher.group(1)));
-
-                matcher = DATE_MODIFY_PATTERN.matcher(values);
-                if (matcher.find() && !matcher.group(1).isEmpty())
-                    super.item.setDateMod(Controller.util.toLocalDateTime(matcher.group(1)));
+                super.item = null;
             }
         };
     }
 
     public static JsonImporter getDleelyInstance(Path path) throws IOException {
-        return getDleelyInstance(Files.newBufferedReader(path, Charset.forName("uft-8")));
+        return getDleelyInstance(Files.newBufferedReader(path, Charset.forName("utf-8")));
     }
 
+    protected final JsonTokenizer json;
+
     private JsonImporter(Reader reader) throws IOException {
         super(reader);
-        peek();
-    }
-
-    private JsonImporter(Path path) throws IOException {
-        super(path);
+        json = new JsonTokenizer(super.reader);
         peek();
     }
 
@@ -115,6 +51,61 @@ public class JsonImporter extends Importer {
 
     }
 
+    /**
+     * Reads the members of an object that was just begun into a new item.
+     * Members with object or array values are skipped.
+     *
+     * @return false if the object has no name or no ref
+     */
+    protected boolean readItem() throws IOException {
+        String name = "";
+        String ref = "";
+        String info = null;
+        boolean privy = false;
+        String tags = null;
+        String dateAdd = "";
+        String dateMod = "";
+
+        JsonTokenizer.Token token;
+        while ((token = json.next()) == JsonTokenizer.Token.NAME) {
+            String key = json.getText();
+            token = json.next();
+            if (token == JsonTokenizer.Token.BEGIN_OBJECT || token == JsonTokenizer.Token.BEGIN_ARRAY) {
+                json.skipContainer();
+                continue;
+            }
+            if (token != JsonTokenizer.Token.STRING && token != JsonTokenizer.Token.NUMBER
+                    && token != JsonTokenizer.Token.LITERAL) break;
+            if (token == JsonTokenizer.Token.LITERAL && json.textEqualsIgnoreCase("null")) continue;
+
+            if (key.equalsIgnoreCase("name")) name = json.getText();
+            else if (key.equalsIgnoreCase("ref")) ref = json.getText();
+            else if (key.equalsIgnoreCase("info")) info = json.getText();
+            else if (key.equalsIgnoreCase("privy")) privy = json.textEqualsIgnoreCase("1") || json.textEqualsIgnoreCase("true");
+            else if (key.equalsIgnoreCase("tags")) tags = json.getText();
+            else if (key.equalsIgnoreCase("dateadd")) dateAdd = json.getText();
+            else if (key.equalsIgnoreCase("datemod")) dateMod = json.getText();
+        }
+        if (token != JsonTokenizer.Token.END_OBJECT) throw new IOException("malformed JSON: unexpected " + token);
+        if (name.isEmpty() || ref.isEmpty()) return false;
+
+        super.item = new Item(name, ref);
+        if (info != null) super.item.setInfo(info);
+        super.item.setPrivy(privy);
+        if (tags != null) {
+            for (int start = 0, end; start < tags.length(); start = end + 1) {
+                end = tags.indexOf(' ', start);
+                if (end == -1) end = tags.length();
+                String tag = tags.substring(start, end);
+                if (!Tag.isValidTagName(tag)) continue;
+                super.item.getTags().add(Tag.getInstance(tag));
+            }
+        }
+        if (!dateAdd.isEmpty()) super.item.setDateAdd(Controller.util.toLocalDateTime(dateAdd));
+        if (!dateMod.isEmpty()) super.item.setDateMod(Controller.util.toLocalDateTime(dateMod));
+        return true;
+    }
+
     @Override
     public Item nextItem() throws Exception {
         if (super.item == null) return null;
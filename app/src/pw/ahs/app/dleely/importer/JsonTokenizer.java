@@ -0,0 +1,270 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A streaming, pull-based JSON tokenizer.
+ * <p>
+ * Tokens are read one at a time with {@link #next()}; the text of the current name or value is kept in one reused
+ * buffer, so memory does not grow with the size of the input.
+ * Escapes in strings are decoded.
+ * <p>
+ * Trailing commas, missing colons and raw line breaks within strings are tolerated, as older exports produced them.
+ * So are unknown and invalid escapes, which are kept as they are: older exports did not escape backslashes,
+ * so {@code C:\Users} stands for itself.
+ */
+public class JsonTokenizer implements AutoCloseable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY,
+        /**
+         * A member name of an object.
+         */
+        NAME,
+        STRING, NUMBER,
+        /**
+         * One of true, false and null.
+         */
+        LITERAL,
+        /**
+         * The end of the input.
+         */
+        END
+    }
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] block = new char[BLOCK_SIZE];
+    private int blockPos = 0;
+    private int blockEnd = 0;
+    private long line = 1;
+
+    private final StringBuilder text = new StringBuilder();
+    // true for each open object, false for each open array
+    private boolean[] objects = new boolean[16];
+    private int depth = 0;
+    private boolean expectName = false;
+
+    public JsonTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next token.
+     */
+    public Token next() throws IOException {
+        while (true) {
+            int c = read();
+            switch (c) {
+                case -1:
+                    if (depth > 0) throw malformed("unexpected end of input");
+                    return Token.END;
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                case ':':
+                    continue;
+                case ',':
+                    expectName = inObject();
+                    continue;
+                case '{':
+                    push(true);
+                    return Token.BEGIN_OBJECT;
+                case '[':
+                    push(false);
+                    return Token.BEGIN_ARRAY;
+                case '}':
+                    pop(true);
+                    return Token.END_OBJECT;
+                case ']':
+                    pop(false);
+                    return Token.END_ARRAY;
+                case '"':
+                    readString();
+                    if (expectName) {
+                        expectName = false;
+                        return Token.NAME;
+                    }
+                    return Token.STRING;
+                default:
+                    return readLiteral((char) c);
+            }
+        }
+    }
+
+    /**
+     * @return the text of the current name, string, number or literal
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Compares the text of the current token with a string, ignoring case, without creating a string.
+     */
+    public boolean textEqualsIgnoreCase(String s) {
+        if (text.length() != s.length()) return false;
+        for (int i = 0; i < s.length(); ++i)
+            if (Character.toLowerCase(text.charAt(i)) != Character.toLowerCase(s.charAt(i))) return false;
+        return true;
+    }
+
+    /**
+     * Skips the rest of the object or array that was just begun.
+     */
+    public void skipContainer() throws IOException {
+        int target = depth - 1;
+        while (depth > target) {
+            if (next() == Token.END) return;
+        }
+    }
+
+    private boolean inObject() {
+        return depth > 0 && objects[depth - 1];
+    }
+
+    private void push(boolean object) {
+        if (depth == objects.length) objects = Arrays.copyOf(objects, depth * 2);
+        objects[depth++] = object;
+        expectName = object;
+    }
+
+    private void pop(boolean object) throws IOException {
+        if (depth == 0 || objects[depth - 1] != object)
+            throw malformed("unexpected " + (object ? '}' : ']'));
+        --depth;
+        expectName = false;
+    }
+
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) throw malformed("unterminated string");
+            if (c == '"') return;
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+
+            c = read();
+            switch (c) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    readUnicodeEscape();
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    text.append((char) c);
+                    break;
+                case -1:
+                    throw malformed("unterminated string");
+                default:
+                    // an unknown escape stands for itself
+                    text.append('\\').append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Decodes the four hex digits of a unicode escape, or keeps the escape as it is if they are not there.
+     */
+    private void readUnicodeEscape() throws IOException {
+        int start = text.length();
+        text.append("\\u");
+        int code = 0;
+        for (int i = 0; i < 4; ++i) {
+            int c = read();
+            int digit = Character.digit(c, 16);
+            if (digit == -1) {
+                // the character is read again as part of the string, or ends it
+                if (c != -1) unread();
+                return;
+            }
+            text.append((char) c);
+            code = code * 16 + digit;
+        }
+        text.setLength(start);
+        text.append((char) code);
+    }
+
+    private Token readLiteral(char first) throws IOException {
+        text.setLength(0);
+        text.append(first);
+        while (true) {
+            int c = read();
+            if (c == -1) break;
+            if (c == ',' || c == ':' || c == '}' || c == ']' || c == '"' || c == '{' || c == '['
+                    || Character.isWhitespace(c)) {
+                unread();
+                break;
+            }
+            text.append((char) c);
+        }
+        expectName = false;
+
+        if (first == '-' || (first >= '0' && first <= '9')) return Token.NUMBER;
+        if (textEqualsIgnoreCase("true") || textEqualsIgnoreCase("false") || textEqualsIgnoreCase("null"))
+            return Token.LITERAL;
+        throw malformed("unexpected " + getText());
+    }
+
+    private int read() throws IOException {
+        if (blockPos == blockEnd) {
+            int n;
+            do {
+                n = reader.read(block, 0, block.length);
+            } while (n == 0);
+            if (n < 0) return -1;
+            blockPos = 0;
+            blockEnd = n;
+        }
+        char c = block[blockPos++];
+        if (c == '\n') ++line;
+        return c;
+    }
+
+    /**
+     * Steps back one character; only valid right after {@link #read()} returned a character.
+     */
+    private void unread() {
+        if (block[--blockPos] == '\n') --line;
+    }
+
+    private IOException malformed(String message) {
+        return new IOException("malformed JSON at line " + line + ": " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
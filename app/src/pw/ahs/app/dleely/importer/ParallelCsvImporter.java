@@ -0,0 +1,221 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import pw.ahs.app.dleely.model.Item;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Imports a large CSV file by parsing chunks of it in parallel.
+ * <p>
+ * The file is memory-mapped a chunk at a time and split at record boundaries: one parallel pass counts the quotes
+ * in each chunk, and a record ends at a line break preceded by an even number of quotes since the start of the file.
+ * This holds as long as quotes within fields are escaped by doubling them.
+ * <p>
+ * Chunks are parsed on the common fork-join pool by a {@link CsvImporter} each, and their items are returned in
+ * file order. Only a couple of chunks per core are parsed ahead of the consumer, so memory stays bounded whatever
+ * the size of the file.
+ */
+public class ParallelCsvImporter extends Importer {
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Creates the importer that parses one chunk.
+     */
+    interface ChunkParser {
+        public CsvImporter create(Reader reader) throws IOException;
+    }
+
+    public static ParallelCsvImporter getDleelyInstance(Path path) throws IOException {
+        return new ParallelCsvImporter(path, CsvImporter::getDleelyInstance, DEFAULT_CHUNK_SIZE);
+    }
+
+    public static ParallelCsvImporter getDiigoInstance(Path path) throws IOException {
+        return new ParallelCsvImporter(path, CsvImporter::getDiigoInstance, DEFAULT_CHUNK_SIZE);
+    }
+
+    private final FileChannel channel;
+    private final ChunkParser parser;
+    private final ForkJoinPool pool;
+    private final long[] bounds;
+    private int nextChunk;
+    private final Deque<ForkJoinTask<List<Item>>> ahead;
+    private Iterator<Item> current;
+
+    ParallelCsvImporter(Path path, ChunkParser parser, int chunkSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.parser = parser;
+        this.pool = ForkJoinPool.commonPool();
+        this.ahead = new ArrayDeque<>();
+        this.current = Collections.emptyIterator();
+        try {
+            this.bounds = split(chunkSize);
+            int window = Math.max(2, pool.getParallelism() * 2);
+            for (int i = 0; i < window; ++i) parseNextChunk();
+            peek();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of chunks the file was split into
+     */
+    int getChunkCount() {
+        return bounds.length - 1;
+    }
+
+    /**
+     * Statistics of one chunk of the file.
+     */
+    private static class ChunkScan {
+        private long quotes = 0;
+        // the positions after the first line break preceded by an even (or odd) number of quotes in the chunk
+        private long evenBreak = -1;
+        private long oddBreak = -1;
+    }
+
+    /**
+     * @return the start of every chunk, followed by the size of the file
+     */
+    private long[] split(int chunkSize) throws IOException {
+        long size = channel.size();
+        int count = (int) ((size + chunkSize - 1) / chunkSize);
+        ChunkScan[] scans = new ChunkScan[count];
+        try {
+            IntStream.range(0, count).parallel().forEach(i -> {
+                long start = (long) i * chunkSize;
+                scans[i] = scan(start, Math.min(size, start + chunkSize));
+            });
+        } catch (UncheckedIOException e) {
+            throw unwrap(e);
+        }
+
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        long quotes = 0;
+        for (int i = 0; i < count; ++i) {
+            // the first record that starts in this chunk, if any
+            long start = (quotes & 1) == 0 ? scans[i].evenBreak : scans[i].oddBreak;
+            if (i > 0 && start != -1 && start < size) starts.add(start);
+            quotes += scans[i].quotes;
+        }
+
+        long[] bounds = new long[starts.size() + 1];
+        for (int i = 0; i < starts.size(); ++i) bounds[i] = starts.get(i);
+        bounds[starts.size()] = size;
+        return bounds;
+    }
+
+    private ChunkScan scan(long start, long end) {
+        ChunkScan scan = new ChunkScan();
+        ByteBuffer buffer = map(start, end);
+        for (int i = 0, n = buffer.limit(); i < n; ++i) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                ++scan.quotes;
+            } else if (b == '\n') {
+                if ((scan.quotes & 1) == 0) {
+                    if (scan.evenBreak == -1) scan.evenBreak = start + i + 1;
+                } else if (scan.oddBreak == -1) {
+                    scan.oddBreak = start + i + 1;
+                }
+            }
+        }
+        return scan;
+    }
+
+    private ByteBuffer map(long start, long end) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void parseNextChunk() {
+        if (nextChunk == bounds.length - 1) return;
+        long start = bounds[nextChunk];
+        long end = bounds[++nextChunk];
+        ahead.add(pool.submit(() -> parse(start, end)));
+    }
+
+    private List<Item> parse(long start, long end) {
+        // a chunk starts after a line break, which is never part of a multi-byte character
+        CharBuffer chars = StandardCharsets.UTF_8.decode(map(start, end));
+        List<Item> items = new ArrayList<>();
+        try (CsvImporter importer = parser.create(new CharArrayReader(chars.array(), chars.arrayOffset(), chars.limit()))) {
+            importer.loadAllItems(items);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+        return items;
+    }
+
+    private void peek() throws IOException {
+        while (!current.hasNext()) {
+            ForkJoinTask<List<Item>> task = ahead.poll();
+            if (task == null) {
+                super.item = null;
+                return;
+            }
+            try {
+                current = task.join().iterator();
+            } catch (UncheckedIOException e) {
+                throw unwrap(e);
+            }
+            parseNextChunk();
+        }
+        super.item = current.next();
+    }
+
+    /**
+     * Exceptions thrown by a task in another thread may reach the caller wrapped in a copy.
+     */
+    private static IOException unwrap(UncheckedIOException e) {
+        for (Throwable t = e; t != null; t = t.getCause())
+            if (t instanceof IOException) return (IOException) t;
+        throw e;
+    }
+
+    @Override
+    public Item nextItem() throws Exception {
+        if (super.item == null) return null;
+        Item i = super.item;
+        ++super.count;
+        peek();
+        return i;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ForkJoinTask<List<Item>> task : ahead) task.cancel(false);
+        ahead.clear();
+        // there is no reader to close
+        channel.close();
+    }
+}
@@ -12,8 +12,8 @@ package pw.ahs.app.dleely.model;
 import javafx.beans.property.*;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import static pw.ahs.app.dleely.Globals.NULL_ID;
@@ -21,8 +21,9 @@ import static pw.ahs.app.dleely.Globals.NULL_ID;
 public class Tag implements Comparable<Tag> {
 
     private static final Pattern PATTERN_TAG_NAME = Pattern.compile("(?U)^\\w+$");
-    private static final Map<Long, Tag> ID_TAG_MAP = new HashMap<>();
-    private static final Map<String, Tag> NAME_TAG_MAP = new HashMap<>();
+    // tags are created and looked up by importers and stores on threads of their own
+    private static final Map<Long, Tag> ID_TAG_MAP = new ConcurrentHashMap<>();
+    private static final Map<String, Tag> NAME_TAG_MAP = new ConcurrentHashMap<>();
 
     private final LongProperty id;
     private final ReadOnlyStringWrapper name;
@@ -101,18 +102,13 @@ public class Tag implements Comparable<Tag> {
     /**
      * The purpose of this method is to avoid creating tags with the same name. This is intended to
      * keep parent id and group id fields consistent.
+     * It is safe to call from any thread: concurrent calls with the same name return the same tag.
      *
      * @param name the tag name
      * @return the tag that has the specified name if it already exists, a new tag with the specified name otherwise
      */
     public static Tag getInstance(String name) {
-        name = checkFixName(name);
-        Tag t = NAME_TAG_MAP.get(name);
-        if (t == null) {
-            t = new Tag(name);
-            NAME_TAG_MAP.put(name, t);
-        }
-        return t;
+        return NAME_TAG_MAP.computeIfAbsent(checkFixName(name), Tag::new);
     }
 
     public static boolean isValidTagName(String name) {
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import pw.ahs.app.dleely.model.Item;
+import pw.ahs.app.dleely.model.Tag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link IStore} calls on a bounded executor and returns their results as {@link CompletableFuture}s.
+ * <p>
+ * Each call can be cancelled through its future: a call that did not start yet is skipped,
+ * and a running call is asked to stop through {@link IStore#cancel()}.
+ * Note that the latter is store-wide and also stops other long operations running at the same time.
+ * <p>
+ * Futures can be composed as usual, e.g. {@code searchItems(q).thenCompose(items -> getTagItemCounts(ids))};
+ * use {@link #getExecutor()} with the {@code *Async} variants to keep dependent work off the common pool.
+ */
+public class AsyncStore implements AutoCloseable {
+    public static final int DEFAULT_THREAD_COUNT = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final IStore store;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+
+    @FunctionalInterface
+    public interface StoreCall<T> {
+        public T call(IStore store) throws Exception;
+    }
+
+    public AsyncStore(IStore store) {
+        this(store, newBoundedExecutor(DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_CAPACITY), true);
+    }
+
+    /**
+     * @param executor an executor shared with other stores, not shut down by {@link #close()}
+     */
+    public AsyncStore(IStore store, ExecutorService executor) {
+        this(store, executor, false);
+    }
+
+    private AsyncStore(IStore store, ExecutorService executor, boolean ownExecutor) {
+        this.store = store;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * @param threadCount   the number of worker threads
+     * @param queueCapacity the number of calls that can wait for a thread, further calls are rejected
+     * @return an executor of daemon threads suitable for store calls
+     */
+    public static ExecutorService newBoundedExecutor(int threadCount, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                threadCount, threadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "store-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+    }
+
+    public IStore getStore() {
+        return store;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs the specified call on the executor.
+     * If the executor is saturated, the returned future completes exceptionally with a {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(StoreCall<T> call) {
+        StoreFuture<T> future = new StoreFuture<>();
+        try {
+            executor.execute(() -> future.run(call));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public CompletableFuture<Collection<Item>> searchItems(String searchQuery) {
+        return submit(s -> {
+            Collection<Item> items = new ArrayList<>();
+            s.searchItems(items, searchQuery);
+            return items;
+        });
+    }
+
+    public CompletableFuture<Collection<Item>> searchItems(String searchQuery, int searchMask) {
+        return submit(s -> {
+            Collection<Item> items = new ArrayList<>();
+            s.searchItems(items, searchQuery, searchMask);
+            return items;
+        });
+    }
+
+    public CompletableFuture<Collection<Item>> getAllItems() {
+        return submit(IStore::getAllItems);
+    }
+
+    public CompletableFuture<Collection<Item>> getItemsById(long... ids) {
+        return submit(s -> s.getItemsById(ids));
+    }
+
+    public CompletableFuture<Collection<Tag>> getAllTags() {
+        return submit(IStore::getAllTags);
+    }
+
+    public CompletableFuture<Map<Long, Long>> getTagItemCounts(long... ids) {
+        return submit(s -> s.getTagItemCounts(ids));
+    }
+
+    public CompletableFuture<Map<String, Long>> completeTags(String prefix, int limit) {
+        return submit(s -> s.completeTags(prefix, limit));
+    }
+
+    public CompletableFuture<Long> getItemCount() {
+        return submit(IStore::getItemCount);
+    }
+
+    public CompletableFuture<Long> getTagCount() {
+        return submit(IStore::getTagCount);
+    }
+
+    public CompletableFuture<Collection<String>> addUpdateItems(Collection<Item> items, boolean update) {
+        return submit(s -> s.addUpdateItems(items, update));
+    }
+
+    public CompletableFuture<Boolean> removeItems(long... ids) {
+        return submit(s -> s.removeItems(ids));
+    }
+
+    public CompletableFuture<IdBitmap> removeItemsById(long... ids) {
+        return submit(s -> s.removeItemsById(ids));
+    }
+
+    /**
+     * Shuts down the executor if it was created by this object. Calls already submitted still run.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor) executor.shutdown();
+    }
+
+    private class StoreFuture<T> extends CompletableFuture<T> {
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private void run(StoreCall<T> call) {
+            if (isDone()) return; // cancelled while queued
+            T result;
+            running.set(true);
+            try {
+                result = call.call(store);
+            } catch (Throwable e) {
+                running.set(false);
+                completeExceptionally(e);
+                return;
+            }
+            // not running anymore before completing, so a late cancel does not stop the next operation instead
+            running.set(false);
+            complete(result);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && running.get())
+                store.cancel();
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+/**
+ * A cache of the number of items per day of one of the item dates.
+ * <p>
+ * The day counts are aggregated by the database, then rolled up into coarser buckets in memory.
+ * Writes mark the days they touch as dirty, and only the range of dirty days is reloaded on the next query.
+ */
+public class DateHistogram {
+
+    public enum Field {
+        ADDED, MODIFIED
+    }
+
+    public enum Bucket {
+        DAY, WEEK, MONTH, YEAR;
+
+        /**
+         * @return the first day of the bucket that contains the specified day; weeks start on Monday
+         */
+        public LocalDate floor(LocalDate day) {
+            switch (this) {
+                case WEEK:
+                    return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH:
+                    return day.withDayOfMonth(1);
+                case YEAR:
+                    return day.withDayOfYear(1);
+                default:
+                    return day;
+            }
+        }
+    }
+
+    /**
+     * Loads day counts from the database.
+     */
+    public interface Loader {
+        /**
+         * @param from the first day, inclusive, null to load all days
+         * @param to   the last day, exclusive, null to load all days
+         */
+        public void load(LocalDate from, LocalDate to, Map<LocalDate, Long> dayCounts) throws SQLException;
+    }
+
+    private final NavigableMap<LocalDate, Long> dayCounts = new TreeMap<>();
+    private final NavigableSet<LocalDate> dirtyDays = new TreeSet<>();
+    private boolean loaded = false;
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Marks the specified day as changed.
+     */
+    public synchronized void touch(LocalDate day) {
+        if (loaded) dirtyDays.add(day);
+    }
+
+    /**
+     * Drops all cached counts.
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+        dayCounts.clear();
+        dirtyDays.clear();
+    }
+
+    /**
+     * @return the number of items per bucket mapped by the first day of the bucket, in date order;
+     * empty buckets are omitted
+     */
+    public synchronized Map<LocalDate, Long> get(Bucket bucket, Loader loader) throws SQLException {
+        refresh(loader);
+
+        Map<LocalDate, Long> buckets = new LinkedHashMap<>();
+        for (Map.Entry<LocalDate, Long> entry : dayCounts.entrySet())
+            buckets.merge(bucket.floor(entry.getKey()), entry.getValue(), Long::sum);
+        return buckets;
+    }
+
+    private void refresh(Loader loader) throws SQLException {
+        if (!loaded) {
+            dayCounts.clear();
+            loader.load(null, null, dayCounts);
+            loaded = true;
+            return;
+        }
+        if (dirtyDays.isEmpty()) return;
+
+        LocalDate from = dirtyDays.first();
+        LocalDate to = dirtyDays.last().plusDays(1);
+        Map<LocalDate, Long> range = new HashMap<>();
+        loader.load(from, to, range);
+        dayCounts.subMap(from, true, to, false).clear();
+        dayCounts.putAll(range);
+        dirtyDays.clear();
+    }
+}
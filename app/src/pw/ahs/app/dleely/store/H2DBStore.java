@@ -27,21 +27,84 @@ import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
-import static pw.ahs.app.dleely.Globals.NULL_ID;
-
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static pw.ahs.app.dleely.Globals.*;
+
+
+/**
+ * An {@link IStore} backed by an embedded H2 database.
+ * <p>
+ * All writes go through a single writer connection, one at a time. Queries are served by a {@link ReaderPool} of
+ * read-only connections, so searches and statistics can run while a bulk write is in progress.
+ * The database runs in MVCC mode and readers see committed data only: a single write is visible as soon as it returns,
+ * while {@link #addUpdateItems(Collection, boolean, int)} becomes visible one commit interval at a time.
+ * <p>
+ * A file storage works on an extracted copy of the database. Changes are checkpointed to that copy periodically
+ * and by {@link #checkpoint()}, which writes only the changed pages. The container is written on close,
+ * and only if something changed since it was last written.
+ */
 public class H2DBStore implements IStore {
 
     // DB
 
     private static final String DB_DRIVER = "org.h2.Driver";
+    private static final String DB_URL_OPTIONS = ";MVCC=TRUE";
+    public static final int DEFAULT_READER_COUNT = 2;
+    private static final AtomicInteger MEM_DB_COUNTER = new AtomicInteger();
+    private static final int WORD_INDEX_VERSION = 3;
+    /**
+     * The number of ids bound to a statement at once by operations on id sets.
+     */
+    private static final int ID_CHUNK_SIZE = 10000;
+    /**
+     * The number of seconds between automatic checkpoints of a file storage.
+     */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 60;
+    /**
+     * The maximum number of items resolved and written at once by a pipelined import.
+     * Kept small: every uncommitted row is also kept in the multi-version indexes until the commit.
+     */
+    private static final int IMPORT_BATCH_SIZE = 100;
+    private static final long IMPORT_POLL_MILLIS = 100;
+    private static final ScheduledExecutorService CHECKPOINTER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "store-checkpoint");
+        t.setDaemon(true);
+        return t;
+    });
     private final Map<String, String> sql;
-    private Connection con = null;
+    private final int readerCount;
+    // read by the checkpoint thread and by callers on other threads, cleared by close()
+    private volatile Connection con = null;
+    private volatile StatementCache statements = null;
+    private volatile ReaderPool readers = null;
+    /**
+     * Held by every write for as long as it uses the writer connection, so that the transactions of
+     * writes from different threads never mix.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final TagDictionary tagDictionary = new TagDictionary();
+    private final TagBitmapIndex tagIndex = new TagBitmapIndex();
+    private final DateHistogram addedHistogram = new DateHistogram();
+    private final DateHistogram modifiedHistogram = new DateHistogram();
+    private StoreStats stats = null;
+    private long statsIndexVersion;
+    private long statsDictionaryVersion;
 
     // IO
 
@@ -51,10 +114,23 @@ public class H2DBStore implements IStore {
     private static final String BK_PASS = "lH0(7!@folDS";
     private static final String DB_FILE_NAME = "Dleely";
     private static final String TEMP_DIR_SUFFIX = "_dleely";
+    private static final String SNAPSHOT_DIR_NAME = "snapshot";
 
     private final Path filePath;
     private final Path tempDirPath;
     private final Path h2dbPath;
+    private boolean compressed = false;
+    private boolean readOnly = false;
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private ScheduledFuture<?> checkpointTask = null;
+    /**
+     * The update count of the writer at the last checkpoint, -1 if unknown.
+     */
+    private volatile long checkpointUpdateCount = -1;
+    /**
+     * The update count of the writer when the container was last written, -1 if the container is out of date.
+     */
+    private volatile long containerUpdateCount = -1;
 
     // Workflow
 
@@ -62,8 +138,19 @@ public class H2DBStore implements IStore {
     private final AtomicBoolean working = new AtomicBoolean();
 
     public H2DBStore(Path path) throws Exception {
+        this(path, DEFAULT_READER_COUNT);
+    }
+
+    /**
+     * @param path        the file path, null for an in-memory storage
+     * @param readerCount the number of read-only connections used for queries
+     */
+    public H2DBStore(Path path, int readerCount) throws Exception {
         Class.forName(DB_DRIVER);
 
+        if (readerCount < 1) throw new IllegalArgumentException("readerCount must be positive");
+        this.readerCount = readerCount;
+
         filePath = path;
         if (filePath == null) {
             tempDirPath = null;
@@ -83,8 +170,29 @@ public class H2DBStore implements IStore {
     }
 
     private void connect(String dbUrl) throws SQLException {
+        dbUrl += DB_URL_OPTIONS;
         con = DriverManager.getConnection(dbUrl, DB_USER, DB_PASS);
         con.setAutoCommit(true);
+        statements = new StatementCache(con, sql);
+        try {
+            readers = new ReaderPool(dbUrl, DB_USER, DB_PASS, readerCount, sql);
+        } catch (SQLException e) {
+            statements.close();
+            con.close();
+            con = null;
+            statements = null;
+            throw e;
+        }
+    }
+
+    /**
+     * @return the statement cache of a read-only connection, to be used for queries
+     * @throws SQLException if the storage is closed or closing
+     */
+    private StatementCache reader() throws SQLException {
+        ReaderPool pool = readers;
+        if (pool == null) throw new SQLException("storage is closed");
+        return pool.next();
     }
 
     private boolean verifyDb() throws SQLException {
@@ -109,6 +217,60 @@ public class H2DBStore implements IStore {
         return filePath;
     }
 
+    /**
+     * @return the prepared statement cache of the current connection, or null if the storage is not opened
+     */
+    public StatementCache getStatementCache() {
+        return statements;
+    }
+
+    /**
+     * @return the tag name/id dictionary, empty if the storage is not opened
+     */
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * @return the tag to items index, empty if the storage is not opened
+     */
+    public TagBitmapIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * @return true if the database file is compressed inside the container on close
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Sets whether the database file is compressed inside the container on close.
+     * An uncompressed file is larger, but opening it is a plain copy rather than an inflate,
+     * and browsing it with {@link #openReadOnly()} is much faster.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Sets the number of seconds between automatic checkpoints, 0 to checkpoint only on demand.
+     * Takes effect on the next open.
+     */
+    public void setCheckpointInterval(long seconds) {
+        if (seconds < 0) throw new IllegalArgumentException("seconds must not be negative");
+        checkpointInterval = seconds;
+    }
+
+    /**
+     * @return true if the database changed since it was last written to its container
+     */
+    public boolean isModified() {
+        StatementCache writer = statements;
+        return writer != null && filePath != null && !readOnly && writer.getUpdateCount() != containerUpdateCount;
+    }
+
     @Override
     public boolean checkInappropriateClose() {
         return !isOpened() && Controller.io.isExistingDir(tempDirPath) && Controller.io.isExistingFile(getH2dbPathWithExt());
@@ -120,11 +282,14 @@ public class H2DBStore implements IStore {
             throw new IllegalStateException("Already opened, should close first");
 
         if (filePath == null) {
-            String dbUrl = "jdbc:h2:mem:";
+            // named so that the reader connections open the same database
+            String dbUrl = "jdbc:h2:mem:dleely" + MEM_DB_COUNTER.incrementAndGet();
             connect(dbUrl);
             PreparedStatement ps = con.prepareStatement(sql.get("create_db"));
             ps.execute();
             ps.close();
+            migrateSchema();
+            loadCaches();
 
             return;
         }
@@ -141,7 +306,7 @@ public class H2DBStore implements IStore {
         2. Remove temporary hidden directory if exists
         3. Create temporary hidden directory
         4. Prepare H2 database file path and connect to database
-        5. Initialize database
+        5. Initialize database and migrate schema
         */
 
         // Step 1
@@ -169,10 +334,14 @@ public class H2DBStore implements IStore {
             PreparedStatement ps = con.prepareStatement(sql.get("create_db"));
             ps.execute();
             ps.close();
+            migrateSchema();
+            loadCaches();
         } catch (SQLException e) {
             close();
             throw e;
         }
+
+        scheduleCheckpoints();
     }
 
     private void open(boolean attemptRecoveryIfNeeded) throws Exception {
@@ -182,13 +351,15 @@ public class H2DBStore implements IStore {
         3. Unzip file content inside the aforementioned directory
         4. Prepare H2 database file path and connect to database
         5. Verify database
+        6. Migrate schema
         */
 
         // Step 1
         Controller.io.createHiddenDir(tempDirPath);
 
         // Step 2 & 3
-        if (!attemptRecoveryIfNeeded || !checkInappropriateClose()) {
+        boolean recovered = attemptRecoveryIfNeeded && checkInappropriateClose();
+        if (!recovered) {
             try {
                 Controller.io.unzip(this.filePath, this.tempDirPath, true);
             } catch (IOException e) {
@@ -212,6 +383,209 @@ public class H2DBStore implements IStore {
             close();
             throw new IllegalArgumentException("invalid file");
         }
+
+        try {
+            boolean migrated = migrateSchema();
+            loadCaches();
+            // a recovered or migrated copy differs from the container
+            if (!recovered && !migrated) containerUpdateCount = statements.getUpdateCount();
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+
+        scheduleCheckpoints();
+    }
+
+    @Override
+    public void openReadOnly() throws Exception {
+        if (isOpened())
+            throw new IllegalStateException("Already opened, should close first");
+        if (filePath == null)
+            throw new IllegalStateException("in-memory storage");
+        if (!Controller.io.isExistingFile(filePath))
+            throw new IllegalArgumentException("invalid file");
+
+        // the database is read straight from the container, nothing is extracted
+        String dbUrl = "jdbc:h2:zip:" + filePath + "!/" + DB_FILE_NAME + ";TRACE_LEVEL_FILE=0;IFEXISTS=TRUE;ACCESS_MODE_DATA=r";
+        connect(dbUrl);
+        readOnly = true;
+
+        if (!verifyDb()) {
+            close();
+            throw new IllegalArgumentException("invalid file");
+        }
+
+        try {
+            // the schema cannot be migrated in place
+            SchemaMigrator migrator = new SchemaMigrator(con, sql);
+            if (migrator.getVersion() < migrator.getLatestVersion()) {
+                close();
+                throw new IllegalArgumentException("outdated file");
+            }
+            loadCaches();
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if any migration was applied
+     */
+    private boolean migrateSchema() throws SQLException {
+        SchemaMigrator migrator = new SchemaMigrator(con, sql);
+        int from = migrator.getVersion();
+        int applied = migrator.migrate();
+        if (from < WORD_INDEX_VERSION)
+            rebuildWordIndex();
+        return applied > 0;
+    }
+
+    private void scheduleCheckpoints() {
+        if (checkpointInterval == 0) return;
+        checkpointTask = CHECKPOINTER.scheduleWithFixedDelay(() -> {
+            StatementCache writer = statements;
+            if (writer == null || writer.getUpdateCount() == checkpointUpdateCount) return;
+            try {
+                checkpoint();
+            } catch (Exception ignored) {
+                // the next checkpoint or the close will write the changes
+            }
+        }, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        StatementCache writer = statements;
+        ReaderPool pool = readers;
+        if (writer == null || pool == null || filePath == null || readOnly) return;
+
+        long updateCount = writer.getUpdateCount();
+        // CHECKPOINT commits the transaction of its session, so it runs on a reader to leave a bulk write intact
+        try (PreparedStatement ps = pool.next().prepare("checkpoint")) {
+            ps.execute();
+        }
+        checkpointUpdateCount = updateCount;
+    }
+
+    /**
+     * Writes a snapshot of the database to the container while the database stays open.
+     * The snapshot is taken with BACKUP, which is consistent while writes go on, and the new container replaces
+     * the old one in a single move, so a crash leaves either the previous save or this one.
+     */
+    @Override
+    public void save() throws Exception {
+        StatementCache writer = statements;
+        if (writer == null || filePath == null || readOnly) return;
+
+        long updateCount = writer.getUpdateCount();
+        Path snapshotDir = tempDirPath.resolve(SNAPSHOT_DIR_NAME);
+        Path snapshot = snapshotDir.resolve(DB_FILE_NAME + ".zip");
+        Path container = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        try {
+            Controller.io.deleteFile(snapshotDir);
+            Files.createDirectories(snapshotDir);
+            // BACKUP commits the transaction of its session and needs write access,
+            // so it runs on a session of its own to leave a bulk write intact
+            try (Connection backupCon = DriverManager.getConnection(writer.getConnection().getMetaData().getURL(),
+                    DB_USER, DB_PASS);
+                 PreparedStatement ps = backupCon.prepareStatement(sql.get("snapshot_db"))) {
+                ps.setString(1, snapshot.toString());
+                ps.execute();
+            }
+            Controller.io.unzip(snapshot, snapshotDir, true);
+            // the copy still has to replay its log; opening and closing it once stores it clean,
+            // so the container can be browsed in place
+            Connection snapshotCon = DriverManager.getConnection(
+                    "jdbc:h2:" + snapshotDir.resolve(DB_FILE_NAME) + ";TRACE_LEVEL_FILE=0;IFEXISTS=TRUE",
+                    DB_USER, DB_PASS);
+            snapshotCon.close();
+            Files.deleteIfExists(container);
+            Controller.io.zipFiles(true, compressed, container,
+                    snapshotDir.resolve(getH2dbPathWithExt().getFileName().toString()));
+            Files.move(container, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(container);
+            Controller.io.deleteIfPossible(snapshotDir);
+        }
+        containerUpdateCount = updateCount;
+    }
+
+    /**
+     * Fills the full-text index from scratch, needed once for databases created before it existed.
+     */
+    private void rebuildWordIndex() throws SQLException {
+        transaction(() -> {
+            try (PreparedStatement ps = statements.prepare("clear_item_words")) {
+                ps.execute();
+            }
+            try (PreparedStatement ps = statements.prepare("select_all_items")) {
+                ResultSet rs = ps.executeQuery();
+                List<Item> batch = new ArrayList<>(DEFAULT_FETCH_SIZE);
+                boolean more = true;
+                while (more) {
+                    more = rs.next();
+                    if (more) batch.add(fetchItem(rs, false));
+                    if (batch.size() == DEFAULT_FETCH_SIZE || (!more && !batch.isEmpty())) {
+                        writeWords(batch, false);
+                        batch.clear();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes that run in a transaction of their own.
+     */
+    private interface Transaction {
+        public void run() throws SQLException;
+    }
+
+    /**
+     * Runs the writes in a transaction of their own on the writer connection, holding the writer lock.
+     * If they fail, the transaction is rolled back and the in-memory mirrors are reloaded,
+     * as the rolled back writes might have been added to the dictionary and the index.
+     */
+    private void transaction(Transaction writes) throws SQLException {
+        writeLock.lock();
+        try {
+            con.setAutoCommit(false);
+            try {
+                writes.run();
+                con.commit();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                loadCaches();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Loads the in-memory mirrors of the database: the tag dictionary and the tag index.
+     * The date histograms are dropped and reloaded when next queried.
+     */
+    private void loadCaches() throws SQLException {
+        addedHistogram.invalidate();
+        modifiedHistogram.invalidate();
+        loadTagDictionary();
+        try (PreparedStatement psTags = statements.prepare("select_tag_names");
+             PreparedStatement psItems = statements.prepare("select_item_ids");
+             PreparedStatement psLinks = statements.prepare("select_tag_item_links")) {
+            tagIndex.load(psTags.executeQuery(), psItems.executeQuery(), psLinks.executeQuery());
+        }
+    }
+
+    private void loadTagDictionary() throws SQLException {
+        try (PreparedStatement ps = statements.prepare("select_tag_names")) {
+            tagDictionary.load(ps.executeQuery());
+        }
     }
 
     @Override
@@ -219,30 +593,86 @@ public class H2DBStore implements IStore {
         return con != null;
     }
 
+    @Override
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     @Override
     public void close() throws Exception {
+        close(null);
+    }
+
+    /**
+     * @param copyDir a directory to copy the database file to once it is closed, null for none
+     */
+    private void close(Path copyDir) throws Exception {
         if (!isOpened()) return;
 
         /*
         1. Close database connection
-        2. Zip database file
-        3. Delete temporary directory
+        2. Zip database file if modified
+        3. Copy database file if requested
+        4. Delete temporary directory
          */
 
+        if (checkpointTask != null) {
+            checkpointTask.cancel(false);
+            checkpointTask = null;
+        }
+        boolean modified = isModified();
+        checkpointUpdateCount = -1;
+        containerUpdateCount = -1;
+
+        // queries in flight stop early, and the readers wait for them before closing
+        cancel.set(true);
+        try {
+            readers.close();
+        } catch (SQLException e) {
+            // ignored, the writer connection is what matters
+        }
+        // a write in flight is let finish
+        writeLock.lock();
         try {
+            statements.close();
             con.close();
         } catch (SQLException e) {
             // ignored because we might still be able to zip files
+        } finally {
+            writeLock.unlock();
         }
 
         con = null;
+        statements = null;
+        readers = null;
+        cancel.set(false);
+        tagDictionary.clear();
+        tagIndex.clear();
+        addedHistogram.invalidate();
+        modifiedHistogram.invalidate();
+        synchronized (this) {
+            stats = null;
+        }
 
         if (filePath == null) return;
+        if (readOnly) {
+            // nothing was extracted and nothing has changed
+            readOnly = false;
+            return;
+        }
 
         // this exception will be thrown because we don't wanna delete the files if we cannot save them
-        Controller.io.zipFiles(true, filePath, getH2dbPathWithExt());
+        if (modified || !Controller.io.isExistingFile(filePath))
+            Controller.io.zipFiles(true, compressed, filePath, getH2dbPathWithExt());
 
-        Controller.io.deleteIfPossible(tempDirPath);
+        try {
+            if (copyDir != null) {
+                Path h2dbFile = getH2dbPathWithExt();
+                Files.copy(h2dbFile, copyDir.resolve(h2dbFile.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Controller.io.deleteIfPossible(tempDirPath);
+        }
     }
 
     @Override
@@ -266,38 +696,108 @@ public class H2DBStore implements IStore {
 
     @Override
     public void backup(Path path) throws Exception {
-        // prepare file
-        if (Controller.io.getFileExt(path).isEmpty())
-            path = Controller.io.setFileExt(path, Globals.FILE_EXT_BACKUP);
+        writeLock.lock();
+        try {
+            // prepare file
+            if (Controller.io.getFileExt(path).isEmpty())
+                path = Controller.io.setFileExt(path, Globals.FILE_EXT_BACKUP);
 
-        if (!Controller.io.isDleelyBackupFile(path)) throw new Exception("h2.error.invalid-file");
+            if (!Controller.io.isDleelyBackupFile(path)) throw new Exception("h2.error.invalid-file");
 
-        PreparedStatement ps = con.prepareStatement(sql.get("backup_db"));
-        ps.setString(1, path.toString());
-        ps.setString(2, BK_PASS);
-        ps.execute();
-        ps.close();
+            PreparedStatement ps = con.prepareStatement(sql.get("backup_db"));
+            ps.setString(1, path.toString());
+            ps.setString(2, BK_PASS);
+            ps.execute();
+            ps.close();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public void restore(Path path) throws Exception {
         if (!Controller.io.isDleelyBackupFile(path)) throw new Exception("h2.error.invalid-file");
 
-        PreparedStatement psClear = con.prepareStatement(sql.get("clear_db"));
         PreparedStatement psRestore = con.prepareStatement(sql.get("restore_db"));
         psRestore.setString(1, path.toString());
         psRestore.setString(2, BK_PASS);
-        psClear.execute();
-        psRestore.execute();
-        psClear.close();
-        psRestore.close();
+        replaceContent(psRestore);
+    }
+
+    /**
+     * Saves this storage as the specified one: this storage is closed, writing its own file if it was changed,
+     * and the target is opened on a copy of the database.
+     * Nothing is copied item by item: a file storage is copied as a file once the database is closed,
+     * and an in-memory one through a script.
+     *
+     * @param target a file storage that is not opened; its file, if any, is replaced
+     */
+    public void saveAs(H2DBStore target) throws Exception {
+        if (!isOpened()) throw new IllegalStateException("not opened");
+        if (target.isOpened()) throw new IllegalStateException("target is already opened");
+        if (target.filePath == null) throw new IllegalArgumentException("target is an in-memory storage");
+
+        if (filePath == null) {
+            target.open(true, false);
+            Path script = Files.createTempFile("dleely", ".sql");
+            try {
+                try (PreparedStatement ps = reader().prepare("script_db")) {
+                    ps.setString(1, script.toString());
+                    ps.execute();
+                }
+                PreparedStatement psRun = target.con.prepareStatement(sql.get("run_script_db"));
+                psRun.setString(1, script.toString());
+                target.replaceContent(psRun);
+            } catch (SQLException e) {
+                target.close();
+                throw e;
+            } finally {
+                Files.deleteIfExists(script);
+            }
+            close();
+            return;
+        }
+
+        if (readOnly) {
+            close();
+            Files.copy(filePath, target.filePath, StandardCopyOption.REPLACE_EXISTING);
+            target.open(false, false);
+            return;
+        }
+
+        // the copy becomes the working copy of the target, which then opens it as if recovering,
+        // so its file is written when it is closed
+        Controller.io.deleteFile(target.tempDirPath);
+        Controller.io.createHiddenDir(target.tempDirPath);
+        close(target.tempDirPath);
+        target.open(false, true);
+    }
+
+    /**
+     * Drops everything, then runs and closes the specified statement that loads the new content.
+     */
+    private void replaceContent(PreparedStatement psLoad) throws SQLException {
+        writeLock.lock();
+        try {
+            PreparedStatement psClear = con.prepareStatement(sql.get("clear_db"));
+            psClear.execute();
+            psLoad.execute();
+            psClear.close();
+            psLoad.close();
+            migrateSchema();
+            loadCaches();
+            // written around the statement cache
+            checkpointUpdateCount = -1;
+            containerUpdateCount = -1;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public boolean itemExist(String ref, Item[] item) throws Exception {
         boolean state = true;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_item_by_ref"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_item_by_ref");
         ps.setString(1, ref);
         ResultSet rs = ps.executeQuery();
         if (!rs.isBeforeFirst()) state = false;
@@ -313,8 +813,7 @@ public class H2DBStore implements IStore {
     @Override
     public boolean tagExist(String name, Tag[] tag) throws Exception {
         boolean state = true;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_tag_by_name"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_tag_by_name");
         ps.setString(1, name);
         ResultSet rs = ps.executeQuery();
         if (!rs.isBeforeFirst()) state = false;
@@ -330,8 +829,7 @@ public class H2DBStore implements IStore {
     @Override
     public Item getItem(long id) throws Exception {
         Item i = null;
-        PreparedStatement ps =
-                con.prepareStatement(sql.get("select_item_by_id"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_item_by_id");
         ps.setLong(1, id);
         ResultSet rs = ps.executeQuery();
         if (rs.isBeforeFirst()) {
@@ -345,8 +843,7 @@ public class H2DBStore implements IStore {
     @Override
     public void loadAllItems(Collection<Item> items) throws Exception {
         start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("select_all_items"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        try (PreparedStatement ps = reader().prepare("select_all_items")) {
             ResultSet rs = ps.executeQuery();
             fetchItems(rs, items);
         } catch (SQLException e) {
@@ -366,8 +863,7 @@ public class H2DBStore implements IStore {
     @Override
     public void loadAllItems(Collection<Item> items, long limit, long offset) throws Exception {
         start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("select_all_items_2"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        try (PreparedStatement ps = reader().prepare("select_all_items_2")) {
             ps.setLong(1, limit);
             ps.setLong(2, offset);
             ResultSet rs = ps.executeQuery();
@@ -387,17 +883,42 @@ public class H2DBStore implements IStore {
     }
 
     @Override
-    public void loadUntaggedItems(Collection<Item> items) throws Exception {
+    public long loadItemsPage(Collection<Item> items, long pageToken, long limit) throws Exception {
+        Collection<Item> page = new ArrayList<>();
+        boolean cancelled;
         start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("select_untagged_items"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        try (PreparedStatement ps = reader().prepare("select_items_page")) {
+            ps.setLong(1, pageToken);
+            ps.setLong(2, limit);
             ResultSet rs = ps.executeQuery();
-            fetchItems(rs, items);
+            fetchItems(rs, page);
+            cancelled = cancel.get() && page.size() < limit;
         } catch (SQLException e) {
             finish();
             throw e;
         }
         finish();
+
+        items.addAll(page);
+        long last = pageToken;
+        for (Item i : page) last = Math.max(last, i.getId());
+        if (cancelled) return resumeToken(last);
+        if (page.size() < limit) return NULL_ID;
+        return last;
+    }
+
+    /**
+     * A cancelled page ends early, so the next page starts after the last row actually read;
+     * this is never {@link pw.ahs.app.dleely.Globals#NULL_ID}, which would read as "no more pages".
+     */
+    private static long resumeToken(long last) {
+        // ids start at 1, so seeking after 0 reads from the first row
+        return last == NULL_ID ? 0 : last;
+    }
+
+    @Override
+    public void loadUntaggedItems(Collection<Item> items) throws Exception {
+        loadItemsById(items, tagIndex.getUntaggedItems().toArray());
     }
 
     @Override
@@ -409,13 +930,14 @@ public class H2DBStore implements IStore {
 
     @Override
     public void loadItemsById(Collection<Item> items, long... ids) throws Exception {
-        // prepare ids list
-        String statement = sql.get("select_items_by_id").replace("CSV", Controller.util.joinArray(ids, ","));
+        if (ids.length == 0) return;
 
         start();
-        try (Statement s = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            ResultSet rs = s.executeQuery(statement);
-            fetchItems(rs, items);
+        try (PreparedStatement ps = reader().prepare("select_items_by_ids")) {
+            for (int from = 0; from < ids.length && !cancel.get(); from += ID_CHUNK_SIZE) {
+                ps.setObject(1, boxIds(ids, from, from + ID_CHUNK_SIZE));
+                fetchItems(ps.executeQuery(), items);
+            }
         } catch (SQLException e) {
             finish();
             throw e;
@@ -437,8 +959,7 @@ public class H2DBStore implements IStore {
 
     private void loadItemTags(long id, Collection<Tag> tags, boolean useStartFinish) throws SQLException {
         if (useStartFinish) start();
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_item_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_item_tags");
         ps.setLong(1, id);
         ResultSet rs = ps.executeQuery();
         if (rs.isBeforeFirst()) {
@@ -460,8 +981,7 @@ public class H2DBStore implements IStore {
 
     @Override
     public long getItemTagCount(long id) throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("count_item_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("count_item_tags");
         ps.setLong(1, id);
         ResultSet rs = ps.executeQuery();
         long count = fetchCount(rs);
@@ -472,8 +992,7 @@ public class H2DBStore implements IStore {
     @Override
     public Tag getTag(long id) throws Exception {
         Tag t = null;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_tag_by_id"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_tag_by_id");
         ps.setLong(1, id);
         ResultSet rs = ps.executeQuery();
         if (rs.isBeforeFirst()) {
@@ -487,8 +1006,7 @@ public class H2DBStore implements IStore {
     @Override
     public void loadAllTags(Collection<Tag> tags) throws Exception {
         start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("select_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        try (PreparedStatement ps = reader().prepare("select_tags")) {
             ResultSet rs = ps.executeQuery();
             if (rs.isBeforeFirst()) {
                 while (rs.next()) {
@@ -512,21 +1030,7 @@ public class H2DBStore implements IStore {
 
     @Override
     public void loadUnusedTags(Collection<Tag> tags) throws Exception {
-        start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("select_unused_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            ResultSet rs = ps.executeQuery();
-            if (rs.isBeforeFirst()) {
-                while (rs.next()) {
-                    tags.add(fetchTag(rs));
-                    if (cancel.get()) break;
-                }
-            }
-        } catch (SQLException e) {
-            finish();
-            throw e;
-        }
-        finish();
+        loadTagsById(tags, tagIndex.getUnusedTags().toArray());
     }
 
     @Override
@@ -539,8 +1043,7 @@ public class H2DBStore implements IStore {
     @Override
     public void loadAllTags(Collection<Tag> tags, long limit, long offset) throws Exception {
         start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("select_tags_2"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        try (PreparedStatement ps = reader().prepare("select_tags_2")) {
             ps.setLong(1, limit);
             ps.setLong(2, offset);
             ResultSet rs = ps.executeQuery();
@@ -564,17 +1067,44 @@ public class H2DBStore implements IStore {
         return tags;
     }
 
+    @Override
+    public long loadTagsPage(Collection<Tag> tags, long pageToken, long limit) throws Exception {
+        long last = pageToken;
+        long count = 0;
+        boolean cancelled;
+        start();
+        try (PreparedStatement ps = reader().prepare("select_tags_page")) {
+            ps.setLong(1, pageToken);
+            ps.setLong(2, limit);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                Tag t = fetchTag(rs);
+                tags.add(t);
+                last = t.getId();
+                ++count;
+                if (cancel.get()) break;
+            }
+            cancelled = cancel.get() && count < limit;
+        } catch (SQLException e) {
+            finish();
+            throw e;
+        }
+        finish();
+
+        if (cancelled) return resumeToken(last);
+        if (count < limit) return NULL_ID;
+        return last;
+    }
+
     @Override
     public void loadTagsById(Collection<Tag> tags, long... ids) throws Exception {
         if (ids.length == 0) return;
 
         start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("select_tags_by_id").replace("CSV", Controller.util.joinArray(ids, ",")),
-                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-
-            ResultSet rs = ps.executeQuery();
-            if (rs.isBeforeFirst()) {
+        try (PreparedStatement ps = reader().prepare("select_tags_by_ids")) {
+            for (int from = 0; from < ids.length && !cancel.get(); from += ID_CHUNK_SIZE) {
+                ps.setObject(1, boxIds(ids, from, from + ID_CHUNK_SIZE));
+                ResultSet rs = ps.executeQuery();
                 while (rs.next()) {
                     tags.add(fetchTag(rs));
                     if (cancel.get()) break;
@@ -597,8 +1127,7 @@ public class H2DBStore implements IStore {
     @Override
     public long getTagItemCount(long id) throws Exception {
         long count = 0;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("count_tag_items"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("count_tag_items");
         ps.setLong(1, id);
         ResultSet rs = ps.executeQuery();
         if (rs.isBeforeFirst()) {
@@ -612,17 +1141,30 @@ public class H2DBStore implements IStore {
     @Override
     public Map<Long, Long> getTagItemCounts(long... ids) throws Exception {
         Map<Long, Long> counts = new LinkedHashMap<>(ids.length);
-        start();
-        try {
-            for (long id : ids) {
-                counts.put(id, getTagItemCount(id));
-                if (cancel.get()) break;
-            }
-        } catch (Exception e) {
-            finish();
-            throw e;
+        if (ids.length == 0) return counts;
+
+        Long[] boxed = new Long[ids.length];
+        for (int i = 0; i < ids.length; ++i) {
+            boxed[i] = ids[i];
+            counts.put(ids[i], 0L);
         }
-        finish();
+        try (PreparedStatement ps = reader().prepare("count_tags_items")) {
+            ps.setObject(1, boxed);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next())
+                counts.put(rs.getLong("tag_id"), rs.getLong("total"));
+        }
+        return counts;
+    }
+
+    /**
+     * Like {@link #getTagItemCounts(long...)} but answered from the in-memory tag index, which is kept
+     * up to date by every write, without querying the database.
+     * During a bulk write it may count links of a chunk that is not committed yet.
+     */
+    private Map<Long, Long> getCachedTagItemCounts(long... ids) {
+        Map<Long, Long> counts = new LinkedHashMap<>(ids.length);
+        for (long id : ids) counts.put(id, tagIndex.getItemCount(id));
         return counts;
     }
 
@@ -638,11 +1180,95 @@ public class H2DBStore implements IStore {
 
     @Override
     public boolean addUpdateItem(Item item, boolean update) throws Exception {
-        // insert item
-        PreparedStatement ps = con.prepareStatement(
-                update ? sql.get("update_item") : sql.get("insert_item"), PreparedStatement.RETURN_GENERATED_KEYS
-        );
+        writeLock.lock();
+        try {
+            TouchedDays days = new TouchedDays();
+            if (update) loadItemDates(new long[]{item.getId()}, days);
+            days.add(item.getDateAdd(), item.getDateMod());
+
+            // insert item
+            try (PreparedStatement ps = statements.prepareReturningKeys(update ? "update_item" : "insert_item")) {
+                setItemParameters(ps, item, update);
+
+                int ar = ps.executeUpdate(); // affected rows
+
+                if (update) {
+                    if (ar == 0) {
+                        // update rejected (updated ref. already exists)
+                        return false;
+                    } else {
+                        try (PreparedStatement ps2 = statements.prepare("remove_item_tags")) {
+                            ps2.setLong(1, item.getId());
+                            ps2.execute();
+                        }
+                        tagIndex.removeLinks(item.getId());
+                    }
+                } else {
+                    if (ar == 0) {
+                        // nothing was inserted (already exists)
+                        return false;
+                    } else {
+                        ResultSet rs = ps.getGeneratedKeys();
+                        rs.next();
+                        item.setId(rs.getLong(1));
+                        rs.close();
+                        tagIndex.addItem(item.getId());
+                    }
+                }
+            }
+            touchDays(days);
+
+            writeWords(Collections.singletonList(item), update);
+
+            // insert tags
+            tagItems(new long[]{item.getId()}, item.getTags().toArray(new Tag[item.getTags().size()]));
+
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the full-text index entries of the specified items with one batch, replacing the old ones on update.
+     */
+    private void writeWords(Collection<Item> items, boolean update) throws SQLException {
+        if (update) {
+            try (PreparedStatement ps = statements.prepare("remove_item_words")) {
+                for (Item item : items) {
+                    ps.setLong(1, item.getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        try (PreparedStatement ps = statements.prepare("insert_item_word")) {
+            Map<String, Integer> wordFieldMap = new HashMap<>();
+            for (Item item : items) {
+                addWords(wordFieldMap, item.getName(), SEARCH_NAME_MASK);
+                addWords(wordFieldMap, item.getRef(), SEARCH_URL_MASK);
+                addWords(wordFieldMap, item.getInfo(), SEARCH_NOTES_MASK);
+                for (Map.Entry<String, Integer> entry : wordFieldMap.entrySet()) {
+                    ps.setString(1, entry.getKey());
+                    ps.setLong(2, item.getId());
+                    ps.setInt(3, entry.getValue());
+                    ps.addBatch();
+                }
+                wordFieldMap.clear();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void addWords(Map<String, Integer> wordFieldMap, String text, int field) {
+        for (String word : WordTokenizer.tokenize(text)) {
+            Integer fields = wordFieldMap.get(word);
+            wordFieldMap.put(word, fields == null ? field : fields | field);
+        }
+    }
 
+    private void setItemParameters(PreparedStatement ps, Item item, boolean update) throws SQLException {
         ps.setString(1, item.getName());
         ps.setString(2, item.getRef());
         ps.setString(3, item.getInfo());
@@ -655,210 +1281,407 @@ public class H2DBStore implements IStore {
             ps.setString(8, item.getRef());
             ps.setLong(9, item.getId());
         }
+    }
 
-        int ar = ps.executeUpdate(); // affected rows
-
-        if (update) {
-            if (ar == 0) {
-                // update rejected (updated ref. already exists)
-                return false;
-            } else {
-                PreparedStatement ps2 = con.prepareStatement(sql.get("remove_item_tags"));
-                ps2.setLong(1, item.getId());
-                ps2.execute();
-                ps2.close();
-            }
-        } else {
-            if (ar == 0) {
-                // nothing was inserted (already exists)
-                return false;
-            } else {
-                ResultSet rs = ps.getGeneratedKeys();
-                rs.next();
-                item.setId(rs.getLong(1));
-                rs.close();
-            }
-        }
-
-        // insert tags
-        tagItems(new long[]{item.getId()}, item.getTags().toArray(new Tag[item.getTags().size()]));
-
-        ps.close();
-        return true;
+    @Override
+    public Collection<String> addUpdateItems(Collection<Item> items, boolean update) throws Exception {
+        return addUpdateItems(items, update, DEFAULT_COMMIT_INTERVAL);
     }
 
     @Override
-    public void addUpdateItems(Collection<Item> items, boolean update) throws Exception {
+    public Collection<String> addUpdateItems(Collection<Item> items, boolean update, int commitInterval) throws Exception {
+        if (commitInterval <= 0) commitInterval = DEFAULT_COMMIT_INTERVAL;
+        Collection<String> rejected = new ArrayList<>();
+        List<Item> chunk = new ArrayList<>(Math.min(items.size(), commitInterval));
+
         start();
         try {
             Iterator<Item> itr = items.iterator();
-            for (int i = 0; i < items.size(); ++i) {
-                addUpdateItem(itr.next(), update);
+            while (itr.hasNext()) {
+                chunk.add(itr.next());
+                if (chunk.size() == commitInterval || !itr.hasNext() || cancel.get()) {
+                    // other writes may run between the chunks
+                    TouchedDays days = new TouchedDays();
+                    transaction(() -> writeItems(chunk, update, rejected, days));
+                    // readers may cache the histograms only once the chunk is visible to them
+                    touchDays(days);
+                    chunk.clear();
+                }
                 if (cancel.get()) break;
             }
-        } catch (Exception e) {
+        } finally {
             finish();
-            throw e;
         }
-        finish();
+        return rejected;
     }
 
-    @Override
-    public boolean addUpdateTag(Tag tag, boolean update) throws Exception {
-        // insert tag
-        PreparedStatement psTag = con.prepareStatement(
-                update ? sql.get("update_tag") : sql.get("insert_tag"), PreparedStatement.RETURN_GENERATED_KEYS);
-        psTag.setString(1, tag.getName());
-        if (tag.getParentId() == NULL_ID)
-            psTag.setNull(2, Types.BIGINT);
-        else
-            psTag.setLong(2, tag.getParentId());
-        if (tag.getGroupId() == NULL_ID)
-            psTag.setNull(3, Types.BIGINT);
-        else
-            psTag.setLong(3, tag.getGroupId());
-        psTag.setTimestamp(4, Controller.util.toTimeStamp(tag.getDateAdd()));
-        psTag.setTimestamp(5, Controller.util.toTimeStamp(tag.getDateMod()));
-
+    /**
+     * Writes items, their tags and their tag links with one JDBC batch each.
+     * Must be called within a transaction.
+     *
+     * @param days receives the old and new days of the written items
+     */
+    private void writeItems(List<Item> items, boolean update, Collection<String> rejected, TouchedDays days) throws SQLException {
         if (update) {
-            // update
-            psTag.setLong(6, tag.getId());
-            psTag.setString(7, tag.getName());
-            psTag.setLong(8, tag.getId());
+            long[] ids = new long[items.size()];
+            for (int i = 0; i < ids.length; ++i) ids[i] = items.get(i).getId();
+            loadItemDates(ids, days);
         }
+        for (Item item : items) days.add(item.getDateAdd(), item.getDateMod());
 
-        int ar = psTag.executeUpdate(); // affected rows
+        // items
+        List<Item> written = new ArrayList<>(items.size());
+        try (PreparedStatement ps = statements.prepare(update ? "update_item" : "insert_item")) {
+            for (Item item : items) {
+                setItemParameters(ps, item, update);
+                ps.addBatch();
+            }
+            int[] ar = ps.executeBatch(); // affected rows
+            for (int i = 0; i < ar.length; ++i) {
+                if (ar[i] == 0)
+                    rejected.add(items.get(i).getRef());
+                else
+                    written.add(items.get(i));
+            }
+        }
+        if (written.isEmpty()) return;
 
         if (update) {
-            if (ar == 0) {
-                // update rejected (updated name already exists)
-                return false;
+            try (PreparedStatement ps = statements.prepare("remove_item_tags")) {
+                for (Item item : written) {
+                    ps.setLong(1, item.getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
             }
+            for (Item item : written) tagIndex.removeLinks(item.getId());
         } else {
-            if (ar == 0) {
-                // nothing was inserted (already exists)
-                return false;
-            } else {
-                ResultSet rs = psTag.getGeneratedKeys();
-                rs.next();
-                tag.setId(rs.getLong(1));
-                rs.close();
+            // generated keys are not reliable with batches; resolve the new ids by ref instead
+            Map<String, Item> refItemMap = new HashMap<>(written.size());
+            for (Item item : written) refItemMap.put(item.getRef(), item);
+            try (PreparedStatement ps = statements.prepare("select_item_ids_by_ref")) {
+                ps.setObject(1, refItemMap.keySet().toArray());
+                ResultSet rs = ps.executeQuery();
+                while (rs.next())
+                    refItemMap.get(rs.getString("ref")).setId(rs.getLong("id"));
             }
+            for (Item item : written) tagIndex.addItem(item.getId());
         }
 
-        return true;
-    }
+        writeWords(written, update);
+
+        // tags
+        Set<Tag> tags = new HashSet<>();
+        for (Item item : written) tags.addAll(item.getTags());
+        if (tags.isEmpty()) return;
+        addTags(tags);
+
+        // links
+        try (PreparedStatement ps = statements.prepare("insert_tag_item")) {
+            for (Item item : written) {
+                for (Tag t : item.getTags()) {
+                    ps.setLong(1, item.getId());
+                    ps.setLong(2, t.getId());
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        for (Item item : written)
+            for (Tag t : item.getTags())
+                tagIndex.addLink(item.getId(), t.getId());
+    }
+
+    /**
+     * Updates the ids of the given tags from the tag dictionary.
+     * Tags that do not exist yet are inserted with one batch and added to the dictionary.
+     */
+    private void addTags(Collection<Tag> tags) throws SQLException {
+        Map<String, Tag> newTags = new HashMap<>();
+        for (Tag t : tags) {
+            long id = tagDictionary.getId(t.getName());
+            if (id == NULL_ID)
+                newTags.put(t.getName(), t);
+            else if (t.getId() != id)
+                t.setId(id);
+        }
+        if (newTags.isEmpty()) return;
+
+        try (PreparedStatement ps = statements.prepare("insert_tag")) {
+            for (Tag t : newTags.values()) {
+                setTagParameters(ps, t, false);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        try (PreparedStatement ps = statements.prepare("select_tags_by_name")) {
+            ps.setObject(1, newTags.keySet().toArray());
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                long id = rs.getLong("id");
+                String name = rs.getString("name");
+                newTags.get(name).setId(id);
+                tagDictionary.put(id, name);
+                tagIndex.addTag(id);
+            }
+        }
+    }
+
+    private void setTagParameters(PreparedStatement ps, Tag tag, boolean update) throws SQLException {
+        ps.setString(1, tag.getName());
+        if (tag.getParentId() == NULL_ID)
+            ps.setNull(2, Types.BIGINT);
+        else
+            ps.setLong(2, tag.getParentId());
+        if (tag.getGroupId() == NULL_ID)
+            ps.setNull(3, Types.BIGINT);
+        else
+            ps.setLong(3, tag.getGroupId());
+        ps.setTimestamp(4, Controller.util.toTimeStamp(tag.getDateAdd()));
+        ps.setTimestamp(5, Controller.util.toTimeStamp(tag.getDateMod()));
+
+        if (update) {
+            ps.setLong(6, tag.getId());
+            ps.setString(7, tag.getName());
+            ps.setLong(8, tag.getId());
+        }
+    }
+
+    @Override
+    public boolean addUpdateTag(Tag tag, boolean update) throws Exception {
+        writeLock.lock();
+        try {
+            // insert tag
+            try (PreparedStatement psTag = statements.prepareReturningKeys(update ? "update_tag" : "insert_tag")) {
+                setTagParameters(psTag, tag, update);
+
+                int ar = psTag.executeUpdate(); // affected rows
+
+                if (update) {
+                    if (ar == 0) {
+                        // update rejected (updated name already exists)
+                        return false;
+                    }
+                } else {
+                    if (ar == 0) {
+                        // nothing was inserted (already exists)
+                        return false;
+                    } else {
+                        ResultSet rs = psTag.getGeneratedKeys();
+                        rs.next();
+                        tag.setId(rs.getLong(1));
+                        rs.close();
+                    }
+                }
+            }
+
+            tagDictionary.put(tag.getId(), tag.getName());
+            tagIndex.addTag(tag.getId());
+
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
     @Override
     public void tagItems(long[] ids, Tag[] tags) throws Exception {
-        if (ids.length == 0 || tags.length == 0) return;
+        writeLock.lock();
+        try {
+            if (ids.length == 0 || tags.length == 0) return;
 
-        boolean state = true;
-        start();
-        try (PreparedStatement psMap = con.prepareStatement(
-                sql.get("insert_tag_item_map"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            for (long id : ids) {
-                for (Tag t : tags) {
-                    addUpdateTag(t, false);
-                    psMap.setLong(1, id);
-                    psMap.setString(2, t.getName());
-                    psMap.addBatch();
-                    if (cancel.get()) {
-                        state = false;
-                        break;
+            boolean state = true;
+            start();
+            try {
+                // new tags are created once, then links are inserted with tag ids directly
+                addTags(Arrays.asList(tags));
+                int count = 0;
+                try (PreparedStatement psMap = statements.prepare("insert_tag_item")) {
+                    for (long id : ids) {
+                        for (Tag t : tags) {
+                            psMap.setLong(1, id);
+                            psMap.setLong(2, t.getId());
+                            psMap.addBatch();
+                            ++count;
+                            if (cancel.get()) {
+                                state = false;
+                                break;
+                            }
+                        }
+                        if (!state) break;
                     }
+                    psMap.executeBatch();
                 }
-                if (!state) break;
+                for (int i = 0; i < count; ++i)
+                    tagIndex.addLink(ids[i / tags.length], tags[i % tags.length].getId());
+            } catch (SQLException e) {
+                finish();
+                throw e;
             }
-            psMap.executeBatch();
-        } catch (SQLException e) {
             finish();
-            throw e;
+        } finally {
+            writeLock.unlock();
         }
-        finish();
     }
 
     @Override
     public boolean removeItem(long id) throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("remove_item"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        ps.setLong(1, id);
-        int ar = ps.executeUpdate();
-        ps.close();
-        return ar > 0;
+        writeLock.lock();
+        try {
+            TouchedDays days = new TouchedDays();
+            loadItemDates(new long[]{id}, days);
+            PreparedStatement ps = statements.prepare("remove_item");
+            ps.setLong(1, id);
+            int ar = ps.executeUpdate();
+            ps.close();
+            tagIndex.removeItems(IdBitmap.of(id));
+            touchDays(days);
+            return ar > 0;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public boolean removeItems(long... ids) throws Exception {
-        String statement = sql.get("remove_items").replace("CSV", Controller.util.joinArray(ids, ","));
+        return !removeItemsById(ids).isEmpty();
+    }
+
+    @Override
+    public IdBitmap removeItemsById(long... ids) throws Exception {
+        IdBitmap removed = new IdBitmap();
+        if (ids.length == 0) return removed;
 
-        Statement s = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        int ar = s.executeUpdate(statement);
-        s.close();
-        return ar > 0;
+        TouchedDays days = new TouchedDays();
+        start();
+        try {
+            transaction(() -> {
+                try (PreparedStatement psSelect = statements.prepare("select_item_dates_by_ids");
+                     PreparedStatement psRemove = statements.prepare("remove_items")) {
+                    for (int from = 0; from < ids.length; from += ID_CHUNK_SIZE) {
+                        Long[] chunk = boxIds(ids, from, from + ID_CHUNK_SIZE);
+                        psSelect.setObject(1, chunk);
+                        ResultSet rs = psSelect.executeQuery();
+                        while (rs.next()) {
+                            removed.add(rs.getLong("id"));
+                            days.add(
+                                    Controller.util.toLocalDateTime(rs.getTimestamp("dateadd")),
+                                    Controller.util.toLocalDateTime(rs.getTimestamp("datemod"))
+                            );
+                        }
+                        psRemove.setObject(1, chunk);
+                        psRemove.executeUpdate();
+                    }
+                }
+            });
+            tagIndex.removeItems(removed);
+            touchDays(days);
+        } finally {
+            finish();
+        }
+        return removed;
     }
 
     @Override
     public boolean removeTag(long id) throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("remove_tag"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        ps.setLong(1, id);
-        int ar = ps.executeUpdate();
-        ps.close();
-        return ar > 0;
+        writeLock.lock();
+        try {
+            PreparedStatement ps = statements.prepare("remove_tag");
+            ps.setLong(1, id);
+            int ar = ps.executeUpdate();
+            ps.close();
+            tagDictionary.remove(id);
+            tagIndex.removeTag(id);
+            return ar > 0;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public boolean removeTagWithItems(long id) throws Exception {
-        PreparedStatement psItems = con.prepareStatement(
-                sql.get("remove_tag_items"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        PreparedStatement psTag = con.prepareStatement(
-                sql.get("remove_tag"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        psItems.setLong(1, id);
-        psItems.execute();
-        psTag.setLong(1, id);
-        psTag.execute();
-        psItems.close();
-        psTag.close();
-        return true;
+        writeLock.lock();
+        try {
+            TouchedDays days = new TouchedDays();
+            loadItemDates(tagIndex.getItems(id).toArray(), days);
+            PreparedStatement psItems = statements.prepare("remove_tag_items");
+            PreparedStatement psTag = statements.prepare("remove_tag");
+            psItems.setLong(1, id);
+            psItems.execute();
+            psTag.setLong(1, id);
+            psTag.execute();
+            psItems.close();
+            psTag.close();
+            tagDictionary.remove(id);
+            tagIndex.removeItems(tagIndex.getItems(id));
+            tagIndex.removeTag(id);
+            touchDays(days);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public long removeUnusedTags() throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("remove_unused_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        int ar = ps.executeUpdate();
-        ps.close();
-        return ar;
+        writeLock.lock();
+        try {
+            PreparedStatement ps = statements.prepare("remove_unused_tags");
+            int ar = ps.executeUpdate();
+            ps.close();
+            IdBitmap removed = tagIndex.removeUnusedTags();
+            if (ar != removed.cardinality()) {
+                // the index disagrees with the database, start over from the database
+                loadCaches();
+            } else {
+                for (long id : removed.toArray()) tagDictionary.remove(id);
+            }
+            return ar;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public boolean replaceTag(long removeId, long keepId) throws Exception {
-        PreparedStatement psRep = con.prepareStatement(sql.get("replace_tag"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        PreparedStatement psDel = con.prepareStatement(sql.get("remove_tag"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        psRep.setLong(1, keepId);
-        psRep.setLong(2, removeId);
-        psRep.setLong(3, keepId);
-        psRep.setLong(4, removeId);
-        psRep.execute();
-        psDel.setLong(1, removeId);
-        psDel.execute();
-
-        psRep.close();
-        psDel.close();
-        return true;
+        writeLock.lock();
+        try {
+            PreparedStatement psRep = statements.prepare("replace_tag");
+            PreparedStatement psDel = statements.prepare("remove_tag");
+            psRep.setLong(1, keepId);
+            psRep.setLong(2, removeId);
+            psRep.setLong(3, keepId);
+            psRep.setLong(4, removeId);
+            psRep.execute();
+            psDel.setLong(1, removeId);
+            psDel.execute();
+
+            psRep.close();
+            psDel.close();
+            tagDictionary.remove(removeId);
+            tagIndex.mergeTag(removeId, keepId);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public boolean replaceTag(long removeId, Tag tag) throws Exception {
-        addUpdateTag(tag, false);
-        return replaceTag(removeId, tag.getId());
+        writeLock.lock();
+        try {
+            // resolves the id whether the tag exists or not
+            addTags(Collections.singleton(tag));
+            return replaceTag(removeId, tag.getId());
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public long getItemCount() throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("count_items"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("count_items");
         ResultSet rs = ps.executeQuery();
         long count = fetchCount(rs);
         ps.close();
@@ -867,8 +1690,7 @@ public class H2DBStore implements IStore {
 
     @Override
     public long getTagCount() throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("count_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("count_tags");
         ResultSet rs = ps.executeQuery();
         long count = fetchCount(rs);
         ps.close();
@@ -877,29 +1699,18 @@ public class H2DBStore implements IStore {
 
     @Override
     public long getUnusedTagCount() throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("count_unused_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        ResultSet rs = ps.executeQuery();
-        long count = fetchCount(rs);
-        ps.close();
-        return count;
+        return tagIndex.getUnusedTagCount();
     }
 
     @Override
     public long getUntaggedItemCount() throws Exception {
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("count_untagged_items"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        ResultSet rs = ps.executeQuery();
-        long count = fetchCount(rs);
-        ps.close();
-        return count;
+        return tagIndex.getUntaggedItemCount();
     }
 
     @Override
     public Tag getMostUsedTag() throws Exception {
         Tag t = null;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_most_used_tag"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_most_used_tag");
         ResultSet rs = ps.executeQuery();
         if (rs.isBeforeFirst()) {
             rs.next();
@@ -913,8 +1724,7 @@ public class H2DBStore implements IStore {
     @Override
     public Item getMostTaggedItem() throws Exception {
         Item i = null;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_most_tagged_item"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_most_tagged_item");
         ResultSet rs = ps.executeQuery();
         if (rs.isBeforeFirst()) {
             rs.next();
@@ -928,8 +1738,7 @@ public class H2DBStore implements IStore {
     @Override
     public Collection<Tag> getTop5Tags() throws Exception {
         Collection<Tag> top = null;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_most_5_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = reader().prepare("select_most_5_tags");
         ResultSet rs = ps.executeQuery();
         if (rs.isBeforeFirst()) {
             top = new LinkedHashSet<>(5);
@@ -944,25 +1753,155 @@ public class H2DBStore implements IStore {
 
     @Override
     public Map<LocalDate, Long> getDateTimeCountMap() throws Exception {
-        Map<LocalDate, Long> dateTimeLongMap = null;
-        PreparedStatement ps = con.prepareStatement(
-                sql.get("select_date_time_count"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        ResultSet rs = ps.executeQuery();
-        if (rs.isBeforeFirst()) {
-            dateTimeLongMap = new LinkedHashMap<>();
-            while (rs.next()) {
-                dateTimeLongMap.put(LocalDate.parse(rs.getString(1)), rs.getLong(2));
+        Map<LocalDate, Long> dateTimeLongMap = getDateHistogram(DateHistogram.Field.ADDED, DateHistogram.Bucket.DAY);
+        return dateTimeLongMap.isEmpty() ? null : dateTimeLongMap;
+    }
+
+    @Override
+    public Map<LocalDate, Long> getDateHistogram(DateHistogram.Field field, DateHistogram.Bucket bucket) throws Exception {
+        boolean added = field == DateHistogram.Field.ADDED;
+        String key = added ? "count_items_by_dateadd_day" : "count_items_by_datemod_day";
+        return (added ? addedHistogram : modifiedHistogram).get(bucket, (from, to, dayCounts) -> {
+            try (PreparedStatement ps = reader().prepare(from == null ? key : key + "_range")) {
+                if (from != null) {
+                    ps.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
+                    ps.setTimestamp(2, Timestamp.valueOf(to.atStartOfDay()));
+                }
+                ResultSet rs = ps.executeQuery();
+                while (rs.next())
+                    dayCounts.put(rs.getDate("day").toLocalDate(), rs.getLong("total"));
             }
+        });
+    }
+
+    /**
+     * The days touched by a write, to be marked in the date histograms once the write is visible to readers.
+     */
+    private static class TouchedDays {
+        private final Set<LocalDate> added = new HashSet<>();
+        private final Set<LocalDate> modified = new HashSet<>();
+        /**
+         * false if the old dates of some written items were not read
+         */
+        private boolean complete = true;
+
+        private void add(LocalDateTime dateAdd, LocalDateTime dateMod) {
+            added.add(dateAdd.toLocalDate());
+            modified.add(dateMod.toLocalDate());
         }
+    }
 
-        ps.close();
-        return dateTimeLongMap;
+    /**
+     * Reads the dates of the specified items, a chunk at a time, with the writer connection,
+     * so uncommitted changes are seen. Nothing is read while no date histogram is cached.
+     */
+    private void loadItemDates(long[] ids, TouchedDays days) throws SQLException {
+        if (!addedHistogram.isLoaded() && !modifiedHistogram.isLoaded()) {
+            days.complete = false;
+            return;
+        }
+        try (PreparedStatement ps = statements.prepare("select_item_dates_by_ids")) {
+            for (int from = 0; from < ids.length; from += ID_CHUNK_SIZE) {
+                ps.setObject(1, boxIds(ids, from, from + ID_CHUNK_SIZE));
+                ResultSet rs = ps.executeQuery();
+                while (rs.next())
+                    days.add(
+                            Controller.util.toLocalDateTime(rs.getTimestamp("dateadd")),
+                            Controller.util.toLocalDateTime(rs.getTimestamp("datemod"))
+                    );
+            }
+        }
+    }
+
+    /**
+     * Marks the specified days as changed in the date histograms.
+     * If the old dates of some written items are missing, a histogram cached in the meantime is dropped instead.
+     */
+    private void touchDays(TouchedDays days) {
+        if (!days.complete) {
+            addedHistogram.invalidate();
+            modifiedHistogram.invalidate();
+            return;
+        }
+        for (LocalDate day : days.added) addedHistogram.touch(day);
+        for (LocalDate day : days.modified) modifiedHistogram.touch(day);
+    }
+
+    @Override
+    public synchronized StoreStats getStats() throws Exception {
+        // the versions are read first, so a change made while computing makes the next call recompute
+        long indexVersion = tagIndex.getVersion();
+        long dictionaryVersion = tagDictionary.getVersion();
+        if (stats == null || indexVersion != statsIndexVersion || dictionaryVersion != statsDictionaryVersion) {
+            stats = tagIndex.getStats(tagDictionary.size());
+            statsIndexVersion = indexVersion;
+            statsDictionaryVersion = dictionaryVersion;
+        }
+        return stats;
+    }
+
+    @Override
+    public synchronized void reloadStats() throws Exception {
+        // the caches are read through the writer connection, which must not be in the middle of a write
+        writeLock.lock();
+        try {
+            loadCaches();
+        } finally {
+            writeLock.unlock();
+        }
+        stats = null;
+    }
+
+    @Override
+    public StoreStats computeStats() throws Exception {
+        StatementCache r = reader();
+        long itemCount;
+        long tagCount;
+        long unusedTagCount;
+        long untaggedItemCount;
+        long mostTaggedItemId = NULL_ID;
+        long mostTaggedItemTagCount = 0;
+        Map<Long, Long> topTags = new LinkedHashMap<>(StoreStats.TOP_TAG_COUNT);
+
+        try (PreparedStatement ps = r.prepare("count_items")) {
+            itemCount = fetchCount(ps.executeQuery());
+        }
+        try (PreparedStatement ps = r.prepare("count_tags")) {
+            tagCount = fetchCount(ps.executeQuery());
+        }
+        try (PreparedStatement ps = r.prepare("count_unused_tags")) {
+            unusedTagCount = fetchCount(ps.executeQuery());
+        }
+        try (PreparedStatement ps = r.prepare("count_untagged_items")) {
+            untaggedItemCount = fetchCount(ps.executeQuery());
+        }
+        try (PreparedStatement ps = r.prepare("select_most_tagged_item_count")) {
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                mostTaggedItemId = rs.getLong("id");
+                mostTaggedItemTagCount = rs.getLong("total");
+            }
+        }
+        try (PreparedStatement ps = r.prepare("select_top_tag_counts")) {
+            ps.setInt(1, StoreStats.TOP_TAG_COUNT);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next())
+                topTags.put(rs.getLong("id"), rs.getLong("total"));
+        }
+
+        return new StoreStats(itemCount, tagCount, unusedTagCount, untaggedItemCount,
+                mostTaggedItemId, mostTaggedItemTagCount, topTags);
     }
 
     private Item fetchItem(ResultSet rs) throws SQLException {
+        return fetchItem(rs, true);
+    }
+
+    private Item fetchItem(ResultSet rs, boolean loadTags) throws SQLException {
         long id = rs.getLong("id");
         Collection<Tag> tags = new HashSet<>();
-        loadItemTags(id, tags, false);
+        if (loadTags)
+            loadItemTags(id, tags, false);
 
         Item i = new Item(rs.getString("name"), rs.getString("ref"));
         i.setId(id);
@@ -975,6 +1914,38 @@ public class H2DBStore implements IStore {
         return i;
     }
 
+    /**
+     * Loads the tags of all the given items with a single query and attaches them to their items.
+     *
+     * @param batch items mapped by their ids
+     */
+    private void loadItemsTags(Map<Long, Item> batch) throws SQLException {
+        if (batch.isEmpty()) return;
+
+        Map<Long, Collection<Tag>> tagsMap = new HashMap<>(batch.size());
+        try (PreparedStatement ps = reader().prepare("select_items_tags")) {
+            ps.setObject(1, batch.keySet().toArray());
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                long itemId = rs.getLong("item_id");
+                Collection<Tag> tags = tagsMap.get(itemId);
+                if (tags == null) {
+                    tags = new ArrayList<>();
+                    tagsMap.put(itemId, tags);
+                }
+                tags.add(fetchTag(rs));
+            }
+        }
+
+        for (Map.Entry<Long, Collection<Tag>> entry : tagsMap.entrySet()) {
+            Item i = batch.get(entry.getKey());
+            // adding tags touches the modification date, so keep the stored one
+            LocalDateTime dateMod = i.getDateMod();
+            i.getTags().addAll(entry.getValue());
+            i.setDateMod(dateMod);
+        }
+    }
+
     private Tag fetchTag(ResultSet rs) throws SQLException {
         Tag tag = Tag.getInstance(rs.getString("name"));
         tag.setId(rs.getLong("id"));
@@ -993,11 +1964,36 @@ public class H2DBStore implements IStore {
         return tag;
     }
 
+    /**
+     * Reads up to {@code max} items from the result set into {@code batch}
+     * and loads their tags with a single query.
+     *
+     * @return false if the result set is exhausted, true otherwise
+     */
+    private boolean fetchItemsBatch(ResultSet rs, Map<Long, Item> batch, int max) throws SQLException {
+        boolean more = true;
+        while (batch.size() < max) {
+            if (!rs.next()) {
+                more = false;
+                break;
+            }
+            Item i = fetchItem(rs, false);
+            batch.put(i.getId(), i);
+        }
+        loadItemsTags(batch);
+        return more;
+    }
+
+    /**
+     * Items are fetched in batches; the tags of each batch are loaded with one query instead of one query per item.
+     */
     private void fetchItems(ResultSet rs, Collection<Item> items) throws SQLException {
-        if (!rs.isBeforeFirst()) return;
-        while (rs.next()) {
-            items.add(fetchItem(rs));
-            if (cancel.get()) break;
+        Map<Long, Item> batch = new LinkedHashMap<>(DEFAULT_FETCH_SIZE);
+        boolean more = true;
+        while (more && !cancel.get()) {
+            more = fetchItemsBatch(rs, batch, DEFAULT_FETCH_SIZE);
+            items.addAll(batch.values());
+            batch.clear();
         }
     }
 
@@ -1009,6 +2005,11 @@ public class H2DBStore implements IStore {
 
     @Override
     public long searchItems(Collection<Item> items, String searchQuery) throws Exception {
+        return searchItems(items, searchQuery, SEARCH_TAG_MASK);
+    }
+
+    @Override
+    public long searchItems(Collection<Item> items, String searchQuery, int searchMask) throws Exception {
         searchQuery = searchQuery.trim();
         if (searchQuery.isEmpty()) {
             loadAllItems(items);
@@ -1016,20 +2017,20 @@ public class H2DBStore implements IStore {
             return items.size();
         }
 
-        if (searchQuery.equalsIgnoreCase(":untagged")) {
+        if (searchQuery.equalsIgnoreCase(":untagged") || (searchMask & SEARCH_UNTAGGED_MASK) != 0) {
             loadUntaggedItems(items);
             if (items.isEmpty()) return 0;
             return items.size();
         }
 
-        String[] tags = searchQuery.split("\\s");
+        long[] ids = searchItemIds(searchQuery, searchMask);
+        if (ids != null) {
+            loadItemsById(items, ids);
+            return items.size();
+        }
 
         start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("search_items").replace("CSV", generateQuestionMarks(tags.length)),
-                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            for (int i = 0; i < tags.length; ++i) ps.setString(i + 1, tags[i]);
-            ps.setLong(tags.length+1, tags.length);
+        try (PreparedStatement ps = prepareSearchItems(searchQuery, searchMask)) {
             ResultSet rs = ps.executeQuery();
             fetchItems(rs, items);
         } catch (SQLException e) {
@@ -1041,11 +2042,222 @@ public class H2DBStore implements IStore {
         return items.size();
     }
 
-    private String generateQuestionMarks(int count) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < count; i++) sb.append("?,");
-        sb.deleteCharAt(sb.length() - 1);
-        return sb.toString();
+    /**
+     * Evaluates the queries that are answered by the in-memory tag index: untagged items and tag queries.
+     *
+     * @return the ids of the items matching the search query in id order,
+     * null if the query is not answered by the index
+     */
+    private long[] searchItemIds(String searchQuery, int searchMask) {
+        searchQuery = searchQuery.trim();
+        if (searchQuery.isEmpty())
+            return null;
+
+        if (searchQuery.equalsIgnoreCase(":untagged") || (searchMask & SEARCH_UNTAGGED_MASK) != 0)
+            return tagIndex.getUntaggedItems().toArray();
+
+        if (searchMask != SEARCH_TAG_MASK)
+            return null;
+
+        return TagQuery.parse(searchQuery).evaluate(tagIndex, tagDictionary).toArray();
+    }
+
+    /**
+     * For the queries that are not answered by {@link #searchItemIds(String, int)}.
+     *
+     * @return a statement that selects the items matching the search query, ready to be executed
+     */
+    private PreparedStatement prepareSearchItems(String searchQuery, int searchMask) throws SQLException {
+        searchQuery = searchQuery.trim();
+        if (searchQuery.isEmpty())
+            return reader().prepare("select_all_items");
+
+        // every word must be found in one of the selected fields, or be a tag name if tags are selected
+        Object[] words = WordTokenizer.tokenize(searchQuery).toArray();
+        if (words.length == 0) return prepareSearchItemsLike(searchQuery, searchMask);
+        PreparedStatement ps = reader().prepare("search_item_words");
+        ps.setObject(1, words);
+        ps.setInt(2, searchMask);
+        ps.setObject(3, words);
+        ps.setBoolean(4, (searchMask & SEARCH_TAG_MASK) != 0);
+        ps.setLong(5, words.length);
+        return ps;
+    }
+
+    /**
+     * For queries with no indexed word, e.g. only one-letter terms: every term must be a substring of one of the
+     * selected fields, or of a tag name if tags are selected.
+     *
+     * @return a statement that scans the items for the terms of the search query, ready to be executed
+     */
+    private PreparedStatement prepareSearchItemsLike(String searchQuery, int searchMask) throws SQLException {
+        String[] terms = searchQuery.toLowerCase().split("\\s+");
+        for (int i = 0; i < terms.length; ++i)
+            terms[i] = "%" + terms[i].replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        PreparedStatement ps = reader().prepare("search_items_like");
+        ps.setObject(1, terms);
+        ps.setBoolean(2, (searchMask & SEARCH_NAME_MASK) != 0);
+        ps.setBoolean(3, (searchMask & SEARCH_URL_MASK) != 0);
+        ps.setBoolean(4, (searchMask & SEARCH_NOTES_MASK) != 0);
+        ps.setBoolean(5, (searchMask & SEARCH_TAG_MASK) != 0);
+        return ps;
+    }
+
+    /**
+     * @return the ids from {@code from}, inclusive, to {@code to} or the end of the array, exclusive,
+     * ready to be bound to a {@code TABLE(id BIGINT = ?)} parameter
+     */
+    private static Long[] boxIds(long[] ids, int from, int to) {
+        to = Math.min(to, ids.length);
+        Long[] boxed = new Long[to - from];
+        for (int i = from; i < to; ++i) boxed[i - from] = ids[i];
+        return boxed;
+    }
+
+    @Override
+    public ItemCursor openItemCursor(int fetchSize) throws Exception {
+        return openItemCursor("", fetchSize);
+    }
+
+    @Override
+    public ItemCursor openItemCursor(String searchQuery, int fetchSize) throws Exception {
+        if (fetchSize <= 0) fetchSize = DEFAULT_FETCH_SIZE;
+        long[] ids = searchItemIds(searchQuery, SEARCH_TAG_MASK);
+        if (ids != null) return new IdItemCursor(ids, fetchSize);
+
+        PreparedStatement ps = prepareSearchItems(searchQuery, SEARCH_TAG_MASK);
+        try {
+            ps.setFetchSize(fetchSize);
+            return new H2ItemCursor(ps, ps.executeQuery(), fetchSize);
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a forward-only result set one batch at a time.
+     * The tags of each batch are loaded with a single query when the batch is read.
+     */
+    private class H2ItemCursor implements ItemCursor {
+        private final PreparedStatement ps;
+        private final ResultSet rs;
+        private final int fetchSize;
+        private final Map<Long, Item> batch;
+        private Iterator<Item> batchItr;
+        private boolean more;
+
+        private H2ItemCursor(PreparedStatement ps, ResultSet rs, int fetchSize) {
+            this.ps = ps;
+            this.rs = rs;
+            this.fetchSize = fetchSize;
+            this.batch = new LinkedHashMap<>(fetchSize);
+            this.batchItr = Collections.emptyIterator();
+            this.more = true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!batchItr.hasNext()) {
+                if (!more || cancel.get()) return false;
+                batch.clear();
+                try {
+                    more = fetchItemsBatch(rs, batch, fetchSize);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                batchItr = batch.values().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Item next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return batchItr.next();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            more = false;
+            ps.close();
+        }
+    }
+
+    /**
+     * Reads the items of an id set one batch of ids at a time, so no more than a batch of ids is bound at once.
+     * The tags of each batch are loaded with a single query when the batch is read.
+     */
+    private class IdItemCursor implements ItemCursor {
+        private final long[] ids;
+        private final int fetchSize;
+        private final Map<Long, Item> batch;
+        private Iterator<Item> batchItr;
+        private int from;
+
+        /**
+         * @param ids sorted ids, so that the items are read in id order
+         */
+        private IdItemCursor(long[] ids, int fetchSize) {
+            this.ids = ids;
+            this.fetchSize = fetchSize;
+            this.batch = new LinkedHashMap<>(fetchSize);
+            this.batchItr = Collections.emptyIterator();
+            this.from = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!batchItr.hasNext()) {
+                if (from >= ids.length || cancel.get()) return false;
+                batch.clear();
+                try (PreparedStatement ps = reader().prepare("select_items_by_ids")) {
+                    ps.setObject(1, boxIds(ids, from, from + fetchSize));
+                    fetchItemsBatch(ps.executeQuery(), batch, fetchSize);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                from += fetchSize;
+                batchItr = batch.values().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Item next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return batchItr.next();
+        }
+
+        @Override
+        public void close() {
+            from = ids.length;
+            batchItr = Collections.emptyIterator();
+        }
+    }
+
+    @Override
+    public Map<String, Long> completeTags(String prefix, int limit) throws Exception {
+        prefix = prefix.trim().toLowerCase();
+        if (limit <= 0) return Collections.emptyMap();
+
+        // keeps the best k matches: the head of the queue is the worst one kept
+        Comparator<long[]> byCount = (a, b) -> a[1] != b[1] ? Long.compare(a[1], b[1]) : Long.compare(b[2], a[2]);
+        PriorityQueue<long[]> top = new PriorityQueue<>(limit + 1, byCount);
+        long[] ids = tagDictionary.getIdsByPrefix(prefix);
+        for (int i = 0; i < ids.length; ++i) {
+            top.add(new long[]{ids[i], tagIndex.getItemCount(ids[i]), i});
+            if (top.size() > limit) top.poll();
+        }
+
+        List<long[]> sorted = new ArrayList<>(top);
+        sorted.sort(byCount.reversed());
+        Map<String, Long> completions = new LinkedHashMap<>(sorted.size());
+        for (long[] entry : sorted) {
+            String name = tagDictionary.getName(entry[0]);
+            if (name != null) completions.put(name, entry[1]);
+        }
+        return completions;
     }
 
     @Override
@@ -1054,34 +2266,19 @@ public class H2DBStore implements IStore {
         if (searchQuery.isEmpty()) {
             loadAllTags(tags);
             if (tags.isEmpty()) return null;
-            return getTagItemCounts(extractIds(tags));
+            return getCachedTagItemCounts(extractIds(tags));
         }
 
         if (searchQuery.equalsIgnoreCase(":unused")) {
             loadUnusedTags(tags);
             if (tags.isEmpty()) return null;
-            return getTagItemCounts(extractIds(tags));
+            return getCachedTagItemCounts(extractIds(tags));
         }
 
-        start();
-        try (PreparedStatement ps = con.prepareStatement(
-                sql.get("search_tags"), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            ps.setString(1, "%" + searchQuery + "%");
-            ResultSet rs = ps.executeQuery();
-            if (rs.isBeforeFirst()) {
-                while (rs.next()) {
-                    tags.add(fetchTag(rs));
-                    if (cancel.get()) break;
-                }
-            }
-        } catch (SQLException e) {
-            finish();
-            throw e;
-        }
-        finish();
-
+        // names are matched in the tag dictionary, so only the rows of the matching tags are read
+        loadTagsById(tags, tagDictionary.getIdsContaining(searchQuery.toLowerCase()));
         if (tags.isEmpty()) return null;
-        return getTagItemCounts(extractIds(tags));
+        return getCachedTagItemCounts(extractIds(tags));
     }
 
     @Override
@@ -1093,8 +2290,6 @@ public class H2DBStore implements IStore {
             OneParamFunction<Item> onAdd,
             TwoParamFunction<Item, Item> onConflict
     ) throws Exception {
-        Item[] tmp = new Item[1];
-        boolean conflict;
         Importer importer;
 
         switch (fileFormat) {
@@ -1105,7 +2300,7 @@ public class H2DBStore implements IStore {
                 importer = CsvImporter.getDiigoInstance(reader);
                 break;
             case NETSCAPE:
-                importer = HtmlImporter.getNetscapeInstance(reader);
+                importer = HtmlImporter.getNetscapeInstance(reader, importConfigs.isFolderTags());
                 break;
             case DLEELY_JSON:
                 importer = JsonImporter.getDleelyInstance(reader);
@@ -1117,6 +2312,22 @@ public class H2DBStore implements IStore {
                 return 0;
         }
 
+        return importItems(importer, importConfigs, items, onAdd, onConflict);
+    }
+
+    private long importItems(
+            Importer importer,
+            ImportConfigs importConfigs,
+            Collection<Item> items,
+            OneParamFunction<Item> onAdd,
+            TwoParamFunction<Item, Item> onConflict
+    ) throws Exception {
+        Item[] tmp = new Item[1];
+        boolean conflict;
+
+        if (importConfigs.isPipelined())
+            return importItemsPipelined(importer, importConfigs, items, onAdd, onConflict);
+
         start();
         try {
             while (importer.hasNext()) {
@@ -1126,6 +2337,8 @@ public class H2DBStore implements IStore {
                 Item imported = importer.nextItem();
                 if (itemExist(imported.getRef(), tmp)) {
                     imported = importConfigs.resolve(tmp[0], imported);
+                    // the update is matched by id
+                    imported.setId(tmp[0].getId());
                     conflict = true;
                 }
                 importConfigs.process(imported);
@@ -1147,41 +2360,227 @@ public class H2DBStore implements IStore {
         return importer.getImportedCount();
     }
 
+    /**
+     * Items resolved against the store, on their way to the writer.
+     */
+    private static class ImportBatch {
+        private final List<Item> inserts = new ArrayList<>();
+        private final List<Item> updates = new ArrayList<>();
+        /**
+         * The items the updates collided with, in the same order.
+         * Their ids are read by the writer, as one may be inserted by an earlier batch.
+         */
+        private final List<Item> collisions = new ArrayList<>();
+    }
+
+    /**
+     * Runs an import as three stages joined by bounded queues: a thread parses, a thread resolves collisions
+     * a batch at a time, and the calling thread writes each batch in a transaction of its own;
+     * other writes may run between the batches.
+     * A full queue blocks the stage before it, so memory stays bounded and the import runs at the pace of
+     * its slowest stage. Cancelling or a failure in any stage stops all of them; committed batches are kept.
+     * Items the writer rejects, as {@link #addUpdateItems(Collection, boolean, int)} does, are left out of
+     * {@code items} and of the callbacks, and are not counted.
+     *
+     * @return the number of items written in committed batches
+     */
+    private long importItemsPipelined(
+            Importer importer,
+            ImportConfigs importConfigs,
+            Collection<Item> items,
+            OneParamFunction<Item> onAdd,
+            TwoParamFunction<Item, Item> onConflict
+    ) throws Exception {
+        BlockingQueue<Item> parsedQueue = new ArrayBlockingQueue<>(IMPORT_BATCH_SIZE * 2);
+        BlockingQueue<ImportBatch> resolvedQueue = new ArrayBlockingQueue<>(2);
+        AtomicBoolean parsed = new AtomicBoolean();
+        AtomicBoolean resolved = new AtomicBoolean();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        // items handed to the writer but not committed yet, mapped by ref
+        Map<String, Item> pending = new ConcurrentHashMap<>();
+
+        Thread parser = new Thread(() -> {
+            try {
+                while (importer.hasNext()) {
+                    if (!offer(parsedQueue, importer.nextItem(), failure)) break;
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                parsed.set(true);
+            }
+        }, "import-parse");
+
+        Thread resolver = new Thread(() -> {
+            try {
+                while (!cancel.get() && failure.get() == null) {
+                    Item first = parsedQueue.poll(IMPORT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (parsed.get() && parsedQueue.isEmpty()) break;
+                        continue;
+                    }
+                    List<Item> chunk = new ArrayList<>(IMPORT_BATCH_SIZE);
+                    chunk.add(first);
+                    parsedQueue.drainTo(chunk, IMPORT_BATCH_SIZE - 1);
+                    if (!offer(resolvedQueue, resolveImported(chunk, importConfigs, pending), failure)) break;
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                resolved.set(true);
+            }
+        }, "import-resolve");
+
+        start();
+        parser.setDaemon(true);
+        resolver.setDaemon(true);
+        parser.start();
+        resolver.start();
+
+        long written = 0;
+        try {
+            while (!cancel.get() && failure.get() == null) {
+                ImportBatch batch = resolvedQueue.poll(IMPORT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    if (resolved.get() && resolvedQueue.isEmpty()) break;
+                    continue;
+                }
+
+                TouchedDays days = new TouchedDays();
+                Set<String> rejectedInserts = new HashSet<>();
+                Set<String> rejectedUpdates = new HashSet<>();
+                transaction(() -> {
+                    if (!batch.inserts.isEmpty())
+                        writeItems(batch.inserts, false, rejectedInserts, days);
+                    if (!batch.updates.isEmpty()) {
+                        for (int i = 0; i < batch.updates.size(); ++i)
+                            batch.updates.get(i).setId(batch.collisions.get(i).getId());
+                        writeItems(batch.updates, true, rejectedUpdates, days);
+                    }
+                });
+                touchDays(days);
+
+                for (Item item : batch.inserts) {
+                    pending.remove(item.getRef(), item);
+                    if (rejectedInserts.contains(item.getRef())) continue;
+                    ++written;
+                    if (items != null) items.add(item);
+                    if (onAdd != null) onAdd.apply(item);
+                }
+                for (int i = 0; i < batch.updates.size(); ++i) {
+                    Item item = batch.updates.get(i);
+                    pending.remove(item.getRef(), item);
+                    if (rejectedUpdates.contains(item.getRef())) continue;
+                    ++written;
+                    if (items != null) items.add(item);
+                    if (onConflict != null) onConflict.apply(batch.collisions.get(i), item);
+                }
+            }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            // the stages see the failure or the cancel within a poll interval
+            parser.join();
+            resolver.join();
+            finish();
+            importer.close();
+        }
+
+        if (failure.get() != null) throw failure.get();
+        return written;
+    }
+
+    /**
+     * Offers an element to a queue, waiting while it is full.
+     *
+     * @return false if the import was cancelled or failed meanwhile
+     */
+    private <T> boolean offer(BlockingQueue<T> queue, T element, AtomicReference<Exception> failure) throws InterruptedException {
+        while (!queue.offer(element, IMPORT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (cancel.get() || failure.get() != null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Resolves collisions for a chunk of imported items with one query.
+     * An item collides with a stored item of the same ref, or with an earlier imported item of the same ref.
+     *
+     * @param pending the items handed to the writer but not committed yet, updated with the chunk
+     */
+    private ImportBatch resolveImported(List<Item> chunk, ImportConfigs importConfigs, Map<String, Item> pending) throws SQLException {
+        // pending items are looked up before the database: an item leaves the map only after it is committed,
+        // so if it is missed in the map it is found by the query
+        Map<String, Item> existing = new HashMap<>(chunk.size());
+        Set<String> lookup = new LinkedHashSet<>();
+        for (Item item : chunk) {
+            Item old = pending.get(item.getRef());
+            if (old != null) existing.put(item.getRef(), old);
+            else lookup.add(item.getRef());
+        }
+        lookup.removeAll(existing.keySet());
+        if (!lookup.isEmpty()) {
+            try (PreparedStatement ps = reader().prepare("select_items_by_refs")) {
+                ps.setObject(1, lookup.toArray());
+                Collection<Item> stored = new ArrayList<>(lookup.size());
+                fetchItems(ps.executeQuery(), stored);
+                for (Item item : stored) existing.put(item.getRef(), item);
+            }
+        }
+
+        ImportBatch batch = new ImportBatch();
+        for (Item imported : chunk) {
+            Item old = existing.get(imported.getRef());
+            if (old == null) {
+                batch.inserts.add(imported);
+            } else {
+                imported = importConfigs.resolve(old, imported);
+                batch.updates.add(imported);
+                batch.collisions.add(old);
+            }
+            importConfigs.process(imported);
+            existing.put(imported.getRef(), imported);
+            pending.put(imported.getRef(), imported);
+        }
+        return batch;
+    }
+
     @Override
     public long importItems(Path path, Globals.FileFormat fileFormat, ImportConfigs importConfigs, Collection<Item> items, OneParamFunction<Item> onAdd, TwoParamFunction<Item, Item> onConflict) throws Exception {
+        if (importConfigs.isParallel()) {
+            switch (fileFormat) {
+                case DLEELY_CVS:
+                    return importItems(ParallelCsvImporter.getDleelyInstance(path), importConfigs, items, onAdd, onConflict);
+                case DIIGO:
+                    return importItems(ParallelCsvImporter.getDiigoInstance(path), importConfigs, items, onAdd, onConflict);
+            }
+        }
         return importItems(Files.newBufferedReader(path, Charset.forName("UTF-8")), fileFormat, importConfigs, items, onAdd, onConflict);
     }
 
-    @Override
-    public long exportItems(Writer writer, Globals.FileFormat fileFormat, ExportConfigs exportConfigs, Collection<Item> items) throws Exception {
-        if (exportConfigs.isSkipAll()) return 0;
-
-        Exporter exporter;
+    private Exporter createExporter(Writer writer, Globals.FileFormat fileFormat, ExportConfigs exportConfigs) throws Exception {
         switch (fileFormat) {
             case DLEELY_CVS:
-                exporter = new TextExporter(writer, TextExporter.TextExportFormatter.getDleelyCsvFormatter(), exportConfigs);
-                break;
+                return new TextExporter(writer, TextExporter.TextExportFormatter.getDleelyCsvFormatter(), exportConfigs);
             case DIIGO:
-                exporter = new TextExporter(writer, TextExporter.TextExportFormatter.getDiigoFormatter(), exportConfigs);
-                break;
+                return new TextExporter(writer, TextExporter.TextExportFormatter.getDiigoFormatter(), exportConfigs);
             case NETSCAPE:
-                exporter = new TextExporter(writer, TextExporter.TextExportFormatter.getNetscapeFormatter(), exportConfigs);
-                break;
+                return new TextExporter(writer, TextExporter.TextExportFormatter.getNetscapeFormatter(), exportConfigs);
             case DLEELY_JSON:
-                exporter = new TextExporter(writer, TextExporter.TextExportFormatter.getDleelyJsonFormatter(), exportConfigs);
-                break;
+                return new TextExporter(writer, TextExporter.TextExportFormatter.getDleelyJsonFormatter(), exportConfigs);
             case DLEELY_XML:
-                exporter = XMLExporter.getDleelyExporter(writer, exportConfigs);
-                break;
+                return XMLExporter.getDleelyExporter(writer, exportConfigs);
             default:
-                return 0;
+                return null;
         }
+    }
 
+    private long exportItems(Exporter exporter, Iterator<Item> items) throws Exception {
         start();
         try {
-            for (Item item : items) {
+            while (items.hasNext()) {
                 if (cancel.get()) break;
-                exporter.put(item);
+                exporter.put(items.next());
             }
         } catch (Exception e) {
             finish();
@@ -1193,8 +2592,35 @@ public class H2DBStore implements IStore {
         return exporter.getExportedCount();
     }
 
+    @Override
+    public long exportItems(Writer writer, Globals.FileFormat fileFormat, ExportConfigs exportConfigs, Collection<Item> items) throws Exception {
+        if (exportConfigs.isSkipAll()) return 0;
+
+        Exporter exporter = createExporter(writer, fileFormat, exportConfigs);
+        if (exporter == null) return 0;
+
+        return exportItems(exporter, items.iterator());
+    }
+
     @Override
     public long exportItems(Path path, Globals.FileFormat fileFormat, ExportConfigs exportConfigs, Collection<Item> items) throws Exception {
         return exportItems(Files.newBufferedWriter(path, Charset.forName("UTF-8")), fileFormat, exportConfigs, items);
     }
+
+    @Override
+    public long exportAllItems(Writer writer, Globals.FileFormat fileFormat, ExportConfigs exportConfigs) throws Exception {
+        if (exportConfigs.isSkipAll()) return 0;
+
+        Exporter exporter = createExporter(writer, fileFormat, exportConfigs);
+        if (exporter == null) return 0;
+
+        try (ItemCursor cursor = openItemCursor(DEFAULT_FETCH_SIZE)) {
+            return exportItems(exporter, cursor);
+        }
+    }
+
+    @Override
+    public long exportAllItems(Path path, Globals.FileFormat fileFormat, ExportConfigs exportConfigs) throws Exception {
+        return exportAllItems(Files.newBufferedWriter(path, Charset.forName("UTF-8")), fileFormat, exportConfigs);
+    }
 }
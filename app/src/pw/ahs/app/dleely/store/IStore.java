@@ -26,6 +26,16 @@ import java.util.Map;
 
 public interface IStore extends AutoCloseable {
 
+    /**
+     * The number of items materialized at once by cursors and bulk loads, unless specified otherwise.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * The number of items written per transaction by bulk writes, unless specified otherwise.
+     */
+    public static final int DEFAULT_COMMIT_INTERVAL = 5000;
+
     // storage
 
     /**
@@ -38,6 +48,12 @@ public interface IStore extends AutoCloseable {
      */
     public void open(boolean create, boolean attemptRecoveryIfNeeded) throws Exception;
 
+    /**
+     * Opens an existing storage for read operations only, without preparing it for writing.
+     * Write operations fail until the storage is closed and opened again with {@link #open(boolean, boolean)}.
+     */
+    public void openReadOnly() throws Exception;
+
     public boolean checkInappropriateClose();
 
     /**
@@ -45,8 +61,24 @@ public interface IStore extends AutoCloseable {
      */
     public boolean isOpened();
 
+    /**
+     * @return true if the storage was opened with {@link #openReadOnly()}
+     */
+    public boolean isReadOnly();
+
     public void close() throws Exception;
 
+    /**
+     * Makes the changes so far durable without closing the storage.
+     * Implementations should take time proportional to the changes rather than to the size of the storage.
+     */
+    public void checkpoint() throws Exception;
+
+    /**
+     * Writes the changes so far to the file of the storage without closing it.
+     */
+    public void save() throws Exception;
+
     // working
 
     /**
@@ -98,6 +130,22 @@ public interface IStore extends AutoCloseable {
             Collection<Item> items
     ) throws Exception;
 
+    /**
+     * Exports all the items in the storage. Items are streamed through an {@link ItemCursor}
+     * instead of being loaded all at once.
+     */
+    public long exportAllItems(
+            Writer writer,
+            Globals.FileFormat fileFormat,
+            ExportConfigs exportConfigs
+    ) throws Exception;
+
+    public long exportAllItems(
+            Path path,
+            Globals.FileFormat fileFormat,
+            ExportConfigs exportConfigs
+    ) throws Exception;
+
     /**
      * @param ref  the reference to validate upon
      * @param item an Item instance to fill it with data if found, may be null
@@ -122,6 +170,18 @@ public interface IStore extends AutoCloseable {
 
     public Collection<Item> getAllItems(long limit, long offset) throws Exception;
 
+    /**
+     * Loads a page of items ordered by id. Unlike {@link #loadAllItems(java.util.Collection, long, long)},
+     * the page is located by seeking on the id index, so fetching any page costs the same,
+     * and pages stay stable while items are added or removed.
+     *
+     * @param pageToken the token returned by the previous call, or {@link Globals#NULL_ID} for the first page
+     * @param limit     the maximum number of items in the page
+     * @return the token of the next page, or {@link Globals#NULL_ID} if there are no more pages;
+     * a cancelled call may load a short page, and returns the token to resume from
+     */
+    public long loadItemsPage(Collection<Item> items, long pageToken, long limit) throws Exception;
+
     public void loadUntaggedItems(Collection<Item> items) throws Exception;
 
     public Collection<Item> getUntaggedItems() throws Exception;
@@ -130,6 +190,23 @@ public interface IStore extends AutoCloseable {
 
     public Collection<Item> getItemsById(long... ids) throws Exception;
 
+    /**
+     * Opens a forward-only cursor over all items.
+     *
+     * @param fetchSize the number of items materialized at once
+     * @return a cursor that must be closed after use
+     */
+    public ItemCursor openItemCursor(int fetchSize) throws Exception;
+
+    /**
+     * Opens a forward-only cursor over the items matching a search query.
+     *
+     * @param searchQuery the same query accepted by {@link #searchItems(java.util.Collection, String)}
+     * @param fetchSize   the number of items materialized at once
+     * @return a cursor that must be closed after use
+     */
+    public ItemCursor openItemCursor(String searchQuery, int fetchSize) throws Exception;
+
     public long getItemTagCount(long id) throws Exception;
 
     /**
@@ -140,7 +217,20 @@ public interface IStore extends AutoCloseable {
      */
     public boolean addUpdateItem(Item item, boolean update) throws Exception;
 
-    public void addUpdateItems(Collection<Item> items, boolean update) throws Exception;
+    /**
+     * Same as {@link #addUpdateItems(java.util.Collection, boolean, int)} with {@link #DEFAULT_COMMIT_INTERVAL}.
+     */
+    public Collection<String> addUpdateItems(Collection<Item> items, boolean update) throws Exception;
+
+    /**
+     * Bulk version of {@link #addUpdateItem(pw.ahs.app.dleely.model.Item, boolean)}.
+     * Items are written in batches inside explicit transactions, committed every {@code commitInterval} items.
+     * Note: the ids of inserted items and of their tags are updated to match the assigned ones in the data store
+     *
+     * @param commitInterval the number of items written per transaction
+     * @return the refs of the items that were rejected because their ref already exists
+     */
+    public Collection<String> addUpdateItems(Collection<Item> items, boolean update, int commitInterval) throws Exception;
 
     /**
      * Note: the tag's id is updated to match the assigned one in the data store
@@ -154,8 +244,20 @@ public interface IStore extends AutoCloseable {
 
     public boolean removeItem(long id) throws Exception;
 
+    /**
+     * @return true if any item was removed
+     * @see #removeItemsById(long...)
+     */
     public boolean removeItems(long... ids) throws Exception;
 
+    /**
+     * Removes the specified items in one transaction.
+     * Ids are bound a chunk at a time, so large selections do not build large statements.
+     *
+     * @return the ids of the removed items; the other ids did not exist
+     */
+    public IdBitmap removeItemsById(long... ids) throws Exception;
+
     public Tag getTag(long id) throws Exception;
 
     public void loadAllTags(Collection<Tag> tags) throws Exception;
@@ -166,6 +268,16 @@ public interface IStore extends AutoCloseable {
 
     public Collection<Tag> getAllTags(long limit, long offset) throws Exception;
 
+    /**
+     * Loads a page of tags ordered by id.
+     *
+     * @param pageToken the token returned by the previous call, or {@link Globals#NULL_ID} for the first page
+     * @param limit     the maximum number of tags in the page
+     * @return the token of the next page, or {@link Globals#NULL_ID} if there are no more pages
+     * @see #loadItemsPage(java.util.Collection, long, long)
+     */
+    public long loadTagsPage(Collection<Tag> tags, long pageToken, long limit) throws Exception;
+
     public void loadUnusedTags(Collection<Tag> tags) throws Exception;
 
     public Collection<Tag> getUnusedTags() throws Exception;
@@ -209,10 +321,66 @@ public interface IStore extends AutoCloseable {
 
     public Map<LocalDate, Long> getDateTimeCountMap() throws Exception;
 
+    /**
+     * Counts items per period of one of their dates.
+     * The counts are cached and only the periods touched by later writes are recounted.
+     *
+     * @return the number of items mapped by the first day of each period, in date order; empty periods are omitted
+     */
+    public Map<LocalDate, Long> getDateHistogram(DateHistogram.Field field, DateHistogram.Bucket bucket) throws Exception;
+
+    /**
+     * Returns a snapshot that is kept up to date by the store as items and tags change,
+     * so it is cheap to call repeatedly.
+     */
+    public StoreStats getStats() throws Exception;
+
+    /**
+     * Recomputes the statistics from the stored data, to verify the snapshot of {@link #getStats()}.
+     * It can take a while on large stores.
+     */
+    public StoreStats computeStats() throws Exception;
+
+    /**
+     * Rebuilds the snapshot of {@link #getStats()} from the stored data, for when {@link #computeStats()} disagrees.
+     */
+    public void reloadStats() throws Exception;
+
     // search
 
+    /**
+     * @param searchQuery a tag query as described in {@link TagQuery}, empty for all items
+     * @return the number of items found
+     */
     public long searchItems(Collection<Item> items, String searchQuery) throws Exception;
 
+    /**
+     * Searches the full-text index.
+     * An item matches if every word of the query is found in one of the fields selected by the search mask.
+     * A search mask of {@link pw.ahs.app.dleely.Globals#SEARCH_TAG_MASK} alone matches exact tag names
+     * like {@link #searchItems(Collection, String)}.
+     *
+     * @param searchMask a combination of the {@code SEARCH_*_MASK} flags in {@link pw.ahs.app.dleely.Globals}
+     * @return the number of items found
+     */
+    public long searchItems(Collection<Item> items, String searchQuery, int searchMask) throws Exception;
+
+    /**
+     * Loads the tags whose names contain the search query, all tags for an empty query,
+     * or the tags without items for {@code :unused}.
+     *
+     * @return the item counts of the loaded tags mapped by their ids, null if none was found
+     */
     public Map<Long, Long> searchTags(Collection<Tag> tags, String searchQuery) throws Exception;
 
+    /**
+     * Completes a tag name, e.g. for the search box.
+     *
+     * @param prefix the beginning of the tag name
+     * @param limit  the maximum number of names to return
+     * @return the names of the tags starting with the prefix and their item counts,
+     * ordered by item count from the most used, then by name
+     */
+    public Map<String, Long> completeTags(String prefix, int limit) throws Exception;
+
 }
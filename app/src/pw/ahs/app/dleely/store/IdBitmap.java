@@ -0,0 +1,456 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ids, in the style of roaring bitmaps.
+ * <p>
+ * Ids are grouped by their high bits into chunks of 65536. A chunk holding few ids keeps them in a sorted array,
+ * a dense chunk keeps them in a plain bitmap. Set operations work chunk by chunk and return new bitmaps.
+ * <p>
+ * Not thread safe.
+ */
+public class IdBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private long[] keys;
+    private Container[] containers;
+    private int size;
+
+    public IdBitmap() {
+        this(4);
+    }
+
+    private IdBitmap(int capacity) {
+        keys = new long[capacity];
+        containers = new Container[capacity];
+        size = 0;
+    }
+
+    public static IdBitmap of(long... ids) {
+        IdBitmap bitmap = new IdBitmap();
+        for (long id : ids) bitmap.add(id);
+        return bitmap;
+    }
+
+    public void add(long id) {
+        long key = id >>> 16;
+        char low = (char) id;
+        int i = findKey(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add(low);
+        } else {
+            i = -i - 1;
+            insertAt(i, key, new ArrayContainer().add(low));
+        }
+    }
+
+    public void remove(long id) {
+        int i = findKey(id >>> 16);
+        if (i < 0) return;
+        Container c = containers[i].remove((char) id);
+        if (c.cardinality() == 0)
+            removeAt(i);
+        else
+            containers[i] = c;
+    }
+
+    public boolean contains(long id) {
+        int i = findKey(id >>> 16);
+        return i >= 0 && containers[i].contains((char) id);
+    }
+
+    public long cardinality() {
+        long card = 0;
+        for (int i = 0; i < size; ++i) card += containers[i].cardinality();
+        return card;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the ids in ascending order
+     */
+    public long[] toArray() {
+        long[] ids = new long[(int) cardinality()];
+        int n = 0;
+        for (int i = 0; i < size; ++i)
+            n = containers[i].copyTo(keys[i] << 16, ids, n);
+        return ids;
+    }
+
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap(Math.max(1, Math.min(size, other.size)));
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) ++i;
+            else if (keys[i] > other.keys[j]) ++j;
+            else {
+                Container c = containers[i].and(other.containers[j]);
+                if (c.cardinality() > 0) result.append(keys[i], c);
+                ++i;
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap result = new IdBitmap(Math.max(1, size + other.size));
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                ++i;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                ++j;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                ++i;
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    public IdBitmap andNot(IdBitmap other) {
+        IdBitmap result = new IdBitmap(Math.max(1, size));
+        int i = 0, j = 0;
+        while (i < size) {
+            if (j == other.size || keys[i] < other.keys[j]) {
+                result.append(keys[i], containers[i].copy());
+                ++i;
+            } else if (keys[i] > other.keys[j]) {
+                ++j;
+            } else {
+                Container c = containers[i].andNot(other.containers[j]);
+                if (c.cardinality() > 0) result.append(keys[i], c);
+                ++i;
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    public IdBitmap copy() {
+        IdBitmap result = new IdBitmap(Math.max(1, size));
+        for (int i = 0; i < size; ++i) result.append(keys[i], containers[i].copy());
+        return result;
+    }
+
+    private int findKey(long key) {
+        // appending in ascending order is the common case when building
+        if (size > 0 && keys[size - 1] == key) return size - 1;
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void append(long key, Container c) {
+        insertAt(size, key, c);
+    }
+
+    private void insertAt(int i, long key, Container c) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = c;
+        ++size;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IdBitmap && Arrays.equals(toArray(), ((IdBitmap) o).toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    // containers of the low 16 bits
+
+    private static abstract class Container {
+        abstract Container add(char x);
+
+        abstract Container remove(char x);
+
+        abstract boolean contains(char x);
+
+        abstract int cardinality();
+
+        abstract int copyTo(long base, long[] ids, int offset);
+
+        abstract Container copy();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int card;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int card) {
+            this.values = values;
+            this.card = card;
+        }
+
+        @Override
+        Container add(char x) {
+            int i = card > 0 && values[card - 1] < x ? -card - 1 : Arrays.binarySearch(values, 0, card, x);
+            if (i >= 0) return this;
+            if (card == ARRAY_MAX) return toBitmap().add(x);
+            i = -i - 1;
+            if (card == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, card * 2));
+            System.arraycopy(values, i, values, i + 1, card - i);
+            values[i] = x;
+            ++card;
+            return this;
+        }
+
+        @Override
+        Container remove(char x) {
+            int i = Arrays.binarySearch(values, 0, card, x);
+            if (i < 0) return this;
+            System.arraycopy(values, i + 1, values, i, card - i - 1);
+            --card;
+            return this;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return Arrays.binarySearch(values, 0, card, x) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        int copyTo(long base, long[] ids, int offset) {
+            for (int i = 0; i < card; ++i) ids[offset++] = base | values[i];
+            return offset;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, card)), card);
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < card; ++i) bitmap.set(values[i]);
+            return bitmap;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[card];
+            int n = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) other;
+                int i = 0, j = 0;
+                while (i < card && j < a.card) {
+                    if (values[i] < a.values[j]) ++i;
+                    else if (values[i] > a.values[j]) ++j;
+                    else {
+                        result[n++] = values[i];
+                        ++i;
+                        ++j;
+                    }
+                }
+            } else {
+                for (int i = 0; i < card; ++i)
+                    if (other.contains(values[i])) result[n++] = values[i];
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) return other.or(this);
+
+            ArrayContainer a = (ArrayContainer) other;
+            char[] result = new char[card + a.card];
+            int n = 0, i = 0, j = 0;
+            while (i < card || j < a.card) {
+                if (j == a.card || (i < card && values[i] < a.values[j])) result[n++] = values[i++];
+                else if (i == card || values[i] > a.values[j]) result[n++] = a.values[j++];
+                else {
+                    result[n++] = values[i++];
+                    ++j;
+                }
+            }
+            ArrayContainer merged = new ArrayContainer(result, n);
+            return n > ARRAY_MAX ? merged.toBitmap() : merged;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[Math.max(1, card)];
+            int n = 0;
+            for (int i = 0; i < card; ++i)
+                if (!other.contains(values[i])) result[n++] = values[i];
+            return new ArrayContainer(result, n);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int card;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int card) {
+            this.words = words;
+            this.card = card;
+        }
+
+        void set(char x) {
+            long before = words[x >>> 6];
+            words[x >>> 6] = before | (1L << x);
+            if (before != words[x >>> 6]) ++card;
+        }
+
+        @Override
+        Container add(char x) {
+            set(x);
+            return this;
+        }
+
+        @Override
+        Container remove(char x) {
+            long before = words[x >>> 6];
+            words[x >>> 6] = before & ~(1L << x);
+            if (before != words[x >>> 6]) --card;
+            return card <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        int copyTo(long base, long[] ids, int offset) {
+            for (int w = 0; w < BITMAP_WORDS; ++w) {
+                long word = words[w];
+                while (word != 0) {
+                    ids[offset++] = base | ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), card);
+        }
+
+        ArrayContainer toArrayContainer() {
+            char[] values = new char[Math.max(1, card)];
+            int n = 0;
+            for (int w = 0; w < BITMAP_WORDS; ++w) {
+                long word = words[w];
+                while (word != 0) {
+                    values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+
+        private static Container fromWords(long[] words) {
+            int card = 0;
+            for (long word : words) card += Long.bitCount(word);
+            BitmapContainer bitmap = new BitmapContainer(words, card);
+            return card <= ARRAY_MAX ? bitmap.toArrayContainer() : bitmap;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) return other.and(this);
+
+            long[] o = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; ++w) result[w] = words[w] & o[w];
+            return fromWords(result);
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) other;
+                for (int i = 0; i < a.card; ++i) result.set(a.values[i]);
+                return result;
+            }
+
+            long[] o = ((BitmapContainer) other).words;
+            int card = 0;
+            for (int w = 0; w < BITMAP_WORDS; ++w) {
+                result.words[w] |= o[w];
+                card += Long.bitCount(result.words[w]);
+            }
+            result.card = card;
+            return result;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) other;
+                for (int i = 0; i < a.card; ++i) result[a.values[i] >>> 6] &= ~(1L << a.values[i]);
+            } else {
+                long[] o = ((BitmapContainer) other).words;
+                for (int w = 0; w < BITMAP_WORDS; ++w) result[w] &= ~o[w];
+            }
+            return fromWords(result);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import pw.ahs.app.dleely.model.Item;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A forward-only cursor over items.
+ * Items are materialized lazily, one batch at a time, so iterating a whole library
+ * needs memory proportional to the batch size rather than to the library size.
+ * A cursor holds storage resources and must be closed after use.
+ */
+public interface ItemCursor extends Iterator<Item>, AutoCloseable {
+
+    @Override
+    public void close() throws SQLException;
+
+    /**
+     * @return a sequential stream over the remaining items; closing the stream closes this cursor
+     */
+    public default Stream<Item> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false
+        ).onClose(() -> {
+            try {
+                close();
+            } catch (SQLException ignored) {
+            }
+        });
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of read-only connections to one database, each with its own {@link StatementCache}.
+ * <p>
+ * Connections are shared rather than checked out: {@link #next()} hands them out in turn,
+ * and a connection serves the callers it is handed to one statement at a time.
+ * <p>
+ * Closing the pool refuses new statements and waits a little for the ones in use to be returned.
+ */
+public class ReaderPool implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final List<StatementCache> readers;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    public ReaderPool(String dbUrl, String user, String password, int size, Map<String, String> sql) throws SQLException {
+        if (size < 1) throw new IllegalArgumentException("size must be positive");
+
+        readers = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; ++i) {
+                Connection con = DriverManager.getConnection(dbUrl, user, password);
+                con.setReadOnly(true);
+                con.setAutoCommit(true);
+                readers.add(new StatementCache(con, sql));
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the statement cache of the next reader connection
+     * @throws SQLException if the pool is closed
+     */
+    public StatementCache next() throws SQLException {
+        if (closed) throw new SQLException("reader pool is closed");
+        return readers.get((next.getAndIncrement() & Integer.MAX_VALUE) % readers.size());
+    }
+
+    public int size() {
+        return readers.size();
+    }
+
+    /**
+     * Closes the statements and the connections of all readers.
+     */
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+        SQLException error = null;
+        // the list is left intact: a caller that got a reader before the pool closed finds its cache closed
+        for (StatementCache reader : readers) {
+            try {
+                reader.close(CLOSE_TIMEOUT_MILLIS);
+                reader.getConnection().close();
+            } catch (SQLException e) {
+                error = e;
+            }
+        }
+        if (error != null) throw error;
+    }
+}
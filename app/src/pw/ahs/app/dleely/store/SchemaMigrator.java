@@ -0,0 +1,90 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Brings the schema of a database up to date.
+ * <p>
+ * Migrations are the {@link SQLLoader} keys {@code migration_1}, {@code migration_2}, ... and are run in order.
+ * The number of the last applied migration is recorded in the {@code schema_version} table,
+ * so each migration runs once per database. Databases created before versioning are at version 0.
+ */
+public class SchemaMigrator {
+    private static final String MIGRATION_KEY_PREFIX = "migration_";
+
+    private final Connection con;
+    private final Map<String, String> sql;
+
+    public SchemaMigrator(Connection con, Map<String, String> sql) {
+        this.con = con;
+        this.sql = sql;
+    }
+
+    /**
+     * @return the number of the last migration available
+     */
+    public int getLatestVersion() {
+        int version = 0;
+        while (sql.containsKey(MIGRATION_KEY_PREFIX + (version + 1)))
+            ++version;
+        return version;
+    }
+
+    /**
+     * Reads the version without writing, so it works on read-only databases as well.
+     *
+     * @return the number of the last migration applied to the database, 0 if it has no {@code schema_version} table
+     */
+    public int getVersion() throws SQLException {
+        try (ResultSet rs = con.getMetaData().getTables(null, null, "SCHEMA_VERSION", new String[]{"TABLE"})) {
+            if (!rs.next()) return 0;
+        }
+        try (PreparedStatement ps = con.prepareStatement(sql.get("select_schema_version"))) {
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Runs the migrations that are not applied yet.
+     *
+     * @return the number of migrations applied
+     */
+    public int migrate() throws SQLException {
+        int from = getVersion();
+        int to = getLatestVersion();
+        if (to > from && con.isReadOnly())
+            throw new SQLException("schema version " + from + " is outdated and the database is read-only");
+
+        if (to > from) {
+            try (PreparedStatement ps = con.prepareStatement(sql.get("create_schema_version"))) {
+                ps.execute();
+            }
+        }
+        for (int version = from + 1; version <= to; ++version) {
+            // DDL statements are committed by H2 as they run, so the version is recorded right after each migration
+            try (PreparedStatement ps = con.prepareStatement(sql.get(MIGRATION_KEY_PREFIX + version))) {
+                ps.execute();
+            }
+            try (PreparedStatement ps = con.prepareStatement(sql.get("insert_schema_version"))) {
+                ps.setInt(1, version);
+                ps.executeUpdate();
+            }
+        }
+        return to - from;
+    }
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Caches the prepared statements of a single connection, keyed by the {@link SQLLoader} key and the result set type.
+ * <p>
+ * A statement is checked out of the cache while in use, so the same statement is never used by two callers at once.
+ * Closing a statement obtained from this cache returns it to the cache instead of closing it.
+ * Cached statements live as long as the connection and are closed by {@link #close()}.
+ * <p>
+ * The cache also counts the statements executed as updates, so the owner can tell cheaply whether anything was written.
+ */
+public class StatementCache implements AutoCloseable {
+
+    private static final int MAX_IDLE_PER_KEY = 4;
+    private static final int RETURN_GENERATED_KEYS = -1;
+
+    private final Connection con;
+    private final Map<String, String> sql;
+    private final Map<String, Deque<PreparedStatement>> idle = new HashMap<>();
+    private final List<PreparedStatement> opened = new ArrayList<>();
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long updateCount = 0;
+    private int leasedCount = 0;
+    private boolean closed = false;
+
+    public StatementCache(Connection con, Map<String, String> sql) {
+        this.con = con;
+        this.sql = sql;
+    }
+
+    /**
+     * @param key the statement key in {@link SQLLoader}
+     * @return a forward-only, read-only statement
+     */
+    public PreparedStatement prepare(String key) throws SQLException {
+        return prepare(key, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    /**
+     * @param key           the statement key in {@link SQLLoader}
+     * @param resultSetType one of the {@link ResultSet} type constants
+     * @return a read-only statement
+     */
+    public PreparedStatement prepare(String key, int resultSetType) throws SQLException {
+        return checkOut(key, resultSetType);
+    }
+
+    /**
+     * @param key the statement key in {@link SQLLoader}
+     * @return a statement that makes auto-generated keys available
+     */
+    public PreparedStatement prepareReturningKeys(String key) throws SQLException {
+        return checkOut(key, RETURN_GENERATED_KEYS);
+    }
+
+    private synchronized PreparedStatement checkOut(String key, int type) throws SQLException {
+        if (closed) throw new SQLException("statement cache is closed");
+
+        String cacheKey = key + "#" + type;
+        Deque<PreparedStatement> statements = idle.get(cacheKey);
+        if (statements != null && !statements.isEmpty()) {
+            ++hitCount;
+            PreparedStatement ps = statements.pop();
+            ((Lease) Proxy.getInvocationHandler(ps)).leased = true;
+            ++leasedCount;
+            return ps;
+        }
+
+        ++missCount;
+        PreparedStatement target;
+        if (type == RETURN_GENERATED_KEYS)
+            target = con.prepareStatement(sql.get(key), PreparedStatement.RETURN_GENERATED_KEYS);
+        else
+            target = con.prepareStatement(sql.get(key), type, ResultSet.CONCUR_READ_ONLY);
+        opened.add(target);
+        ++leasedCount;
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new Lease(cacheKey, target)
+        );
+    }
+
+    private synchronized void checkIn(String cacheKey, PreparedStatement target, PreparedStatement proxy) throws SQLException {
+        if (--leasedCount == 0) notifyAll();
+        Deque<PreparedStatement> statements = idle.get(cacheKey);
+        if (statements == null) {
+            statements = new ArrayDeque<>(MAX_IDLE_PER_KEY);
+            idle.put(cacheKey, statements);
+        }
+
+        if (closed || statements.size() >= MAX_IDLE_PER_KEY) {
+            opened.remove(target);
+            target.close();
+            return;
+        }
+
+        target.clearParameters();
+        target.setFetchSize(0);
+        statements.push(proxy);
+    }
+
+    /**
+     * @return the connection the statements of this cache are prepared on
+     */
+    public Connection getConnection() {
+        return con;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of times a statement of this cache was executed with
+     * {@code execute}, {@code executeUpdate} or {@code executeBatch}
+     */
+    public synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    private synchronized void countUpdate() {
+        ++updateCount;
+    }
+
+    /**
+     * Stops checking out statements and waits for the ones currently checked out to be returned,
+     * then closes all the statements created by this cache.
+     *
+     * @param timeoutMillis how long to wait before closing the statements that are still checked out
+     */
+    public synchronized void close(long timeoutMillis) throws SQLException {
+        closed = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long left;
+        while (leasedCount > 0 && (left = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        close();
+    }
+
+    /**
+     * Closes all the statements created by this cache, including the ones currently checked out.
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        closed = true;
+        SQLException error = null;
+        for (PreparedStatement ps : opened) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                error = e;
+            }
+        }
+        opened.clear();
+        idle.clear();
+        if (error != null) throw error;
+    }
+
+    private class Lease implements InvocationHandler {
+        private final String cacheKey;
+        private final PreparedStatement target;
+        private boolean leased;
+
+        private Lease(String cacheKey, PreparedStatement target) {
+            this.cacheKey = cacheKey;
+            this.target = target;
+            this.leased = true;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (leased) {
+                        leased = false;
+                        checkIn(cacheKey, target, (PreparedStatement) proxy);
+                    }
+                    return null;
+                case "isClosed":
+                    return !leased || target.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "execute":
+                case "executeUpdate":
+                case "executeBatch":
+                    countUpdate();
+                    return delegate(method, args);
+                default:
+                    return delegate(method, args);
+            }
+        }
+
+        private Object delegate(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static pw.ahs.app.dleely.Globals.NULL_ID;
+
+/**
+ * An immutable snapshot of the statistics of a store.
+ * <p>
+ * Ties are broken by the smaller id, so two snapshots of the same content are equal
+ * no matter how they were computed.
+ */
+public class StoreStats {
+    public static final int TOP_TAG_COUNT = 5;
+
+    private final long itemCount;
+    private final long tagCount;
+    private final long unusedTagCount;
+    private final long untaggedItemCount;
+    private final long mostTaggedItemId;
+    private final long mostTaggedItemTagCount;
+    private final Map<Long, Long> topTags;
+
+    /**
+     * @param topTags the item counts of the most used tags mapped by tag id, most used first
+     */
+    public StoreStats(long itemCount, long tagCount, long unusedTagCount, long untaggedItemCount,
+                      long mostTaggedItemId, long mostTaggedItemTagCount, Map<Long, Long> topTags) {
+        this.itemCount = itemCount;
+        this.tagCount = tagCount;
+        this.unusedTagCount = unusedTagCount;
+        this.untaggedItemCount = untaggedItemCount;
+        this.mostTaggedItemId = mostTaggedItemId;
+        this.mostTaggedItemTagCount = mostTaggedItemTagCount;
+        this.topTags = Collections.unmodifiableMap(new LinkedHashMap<>(topTags));
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    public long getTagCount() {
+        return tagCount;
+    }
+
+    public long getUnusedTagCount() {
+        return unusedTagCount;
+    }
+
+    public long getUntaggedItemCount() {
+        return untaggedItemCount;
+    }
+
+    /**
+     * @return the id of the item with the most tags, {@link pw.ahs.app.dleely.Globals#NULL_ID} if no item has tags
+     */
+    public long getMostTaggedItemId() {
+        return mostTaggedItemId;
+    }
+
+    public long getMostTaggedItemTagCount() {
+        return mostTaggedItemTagCount;
+    }
+
+    /**
+     * @return the id of the tag with the most items, {@link pw.ahs.app.dleely.Globals#NULL_ID} if no tag has items
+     */
+    public long getMostUsedTagId() {
+        return topTags.isEmpty() ? NULL_ID : topTags.keySet().iterator().next();
+    }
+
+    public long getMostUsedTagItemCount() {
+        return topTags.isEmpty() ? 0 : topTags.values().iterator().next();
+    }
+
+    /**
+     * @return the item counts of at most {@link #TOP_TAG_COUNT} most used tags mapped by tag id, most used first
+     */
+    public Map<Long, Long> getTopTags() {
+        return topTags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        StoreStats that = (StoreStats) o;
+
+        return itemCount == that.itemCount
+                && tagCount == that.tagCount
+                && unusedTagCount == that.unusedTagCount
+                && untaggedItemCount == that.untaggedItemCount
+                && mostTaggedItemId == that.mostTaggedItemId
+                && mostTaggedItemTagCount == that.mostTaggedItemTagCount
+                // the order matters as well
+                && new ArrayList<>(topTags.entrySet()).equals(new ArrayList<>(that.topTags.entrySet()));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(itemCount);
+        result = 31 * result + Long.hashCode(tagCount);
+        result = 31 * result + Long.hashCode(unusedTagCount);
+        result = 31 * result + Long.hashCode(untaggedItemCount);
+        result = 31 * result + Long.hashCode(mostTaggedItemId);
+        result = 31 * result + Long.hashCode(mostTaggedItemTagCount);
+        result = 31 * result + topTags.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "items=" + itemCount
+                + ", tags=" + tagCount
+                + ", unused=" + unusedTagCount
+                + ", untagged=" + untaggedItemCount
+                + ", mostTaggedItem=" + mostTaggedItemId + ":" + mostTaggedItemTagCount
+                + ", topTags=" + topTags;
+    }
+}
@@ -0,0 +1,343 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import pw.ahs.app.dleely.Globals;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * An in-memory index from each tag id to the {@link IdBitmap} of the ids of its items,
+ * plus the bitmap of all item ids.
+ * The reverse links, from each item id to the ids of its tags, are kept as well,
+ * so removing the links of an item touches only the bitmaps of its own tags.
+ * The items without tags and the tags without items are kept as sets of their own,
+ * so listing them costs time proportional to their number rather than to the size of the index.
+ * The tags and the items are also ranked by their link counts as links change,
+ * so the statistics of the index are read off without a recount.
+ * <p>
+ * It mirrors the item and tag_item tables of a store and is kept in sync by the store's write paths.
+ * All methods are synchronized; bitmaps returned to callers are copies.
+ * Every change bumps a version number, so results derived from the index can be cached until it changes.
+ */
+public class TagBitmapIndex {
+    private final Map<Long, IdBitmap> tagItems = new HashMap<>();
+    // only items with tags have an entry
+    private final Map<Long, IdBitmap> itemTags = new HashMap<>();
+    private IdBitmap allItems = new IdBitmap();
+    private IdBitmap untaggedItems = new IdBitmap();
+    private IdBitmap unusedTags = new IdBitmap();
+    // {id, count} pairs of the tags with items and of the items with tags, ordered by count
+    private final TreeSet<long[]> tagsByCount = new TreeSet<>(TagBitmapIndex::compareCounts);
+    private final TreeSet<long[]> itemsByCount = new TreeSet<>(TagBitmapIndex::compareCounts);
+    private long version = 0;
+
+    /**
+     * Replaces the content of this index.
+     *
+     * @param tags  a result set with an {@code id} column
+     * @param items a result set with an {@code id} column, preferably sorted
+     * @param links a result set with {@code tag_id} and {@code item_id} columns, preferably sorted
+     */
+    public synchronized void load(ResultSet tags, ResultSet items, ResultSet links) throws SQLException {
+        clear();
+        while (items.next())
+            allItems.add(items.getLong("id"));
+        while (links.next()) {
+            long itemId = links.getLong("item_id");
+            long tagId = links.getLong("tag_id");
+            bitmap(tagItems, tagId).add(itemId);
+            bitmap(itemTags, itemId).add(tagId);
+        }
+        while (tags.next()) {
+            long tagId = tags.getLong("id");
+            if (!tagItems.containsKey(tagId)) unusedTags.add(tagId);
+        }
+        for (long itemId : allItems.toArray())
+            if (!itemTags.containsKey(itemId)) untaggedItems.add(itemId);
+        for (Map.Entry<Long, IdBitmap> entry : tagItems.entrySet())
+            tagsByCount.add(new long[]{entry.getKey(), entry.getValue().cardinality()});
+        for (Map.Entry<Long, IdBitmap> entry : itemTags.entrySet())
+            itemsByCount.add(new long[]{entry.getKey(), entry.getValue().cardinality()});
+    }
+
+    public synchronized void clear() {
+        tagItems.clear();
+        itemTags.clear();
+        tagsByCount.clear();
+        itemsByCount.clear();
+        allItems = new IdBitmap();
+        untaggedItems = new IdBitmap();
+        unusedTags = new IdBitmap();
+        ++version;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    private static IdBitmap bitmap(Map<Long, IdBitmap> bitmaps, long id) {
+        IdBitmap bitmap = bitmaps.get(id);
+        if (bitmap == null) {
+            bitmap = new IdBitmap();
+            bitmaps.put(id, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds one id to the bitmap mapped to another, and moves the latter in the ranking by count.
+     *
+     * @return false if the bitmap already has the id
+     */
+    private static boolean add(Map<Long, IdBitmap> bitmaps, TreeSet<long[]> byCount, long id, long addId) {
+        IdBitmap bitmap = bitmap(bitmaps, id);
+        if (bitmap.contains(addId)) return false;
+        long count = bitmap.cardinality();
+        bitmap.add(addId);
+        if (count > 0) byCount.remove(new long[]{id, count});
+        byCount.add(new long[]{id, count + 1});
+        return true;
+    }
+
+    /**
+     * Removes one id from the bitmap mapped to another, and moves the latter in the ranking by count.
+     * The mapping is removed if the bitmap is left empty.
+     *
+     * @return true if the bitmap is left empty
+     */
+    private static boolean remove(Map<Long, IdBitmap> bitmaps, TreeSet<long[]> byCount, long id, long removeId) {
+        IdBitmap bitmap = bitmaps.get(id);
+        if (bitmap == null || !bitmap.contains(removeId)) return false;
+        long count = bitmap.cardinality();
+        bitmap.remove(removeId);
+        byCount.remove(new long[]{id, count});
+        if (count > 1) {
+            byCount.add(new long[]{id, count - 1});
+            return false;
+        }
+        bitmaps.remove(id);
+        return true;
+    }
+
+    /**
+     * Adds a tag that has no items yet.
+     */
+    public synchronized void addTag(long tagId) {
+        if (!tagItems.containsKey(tagId)) unusedTags.add(tagId);
+        ++version;
+    }
+
+    public synchronized void addItem(long itemId) {
+        allItems.add(itemId);
+        untaggedItems.add(itemId);
+        ++version;
+    }
+
+    public synchronized void addLink(long itemId, long tagId) {
+        link(itemId, tagId);
+        ++version;
+    }
+
+    private void link(long itemId, long tagId) {
+        if (!add(tagItems, tagsByCount, tagId, itemId)) return;
+        add(itemTags, itemsByCount, itemId, tagId);
+        untaggedItems.remove(itemId);
+        unusedTags.remove(tagId);
+    }
+
+    private void unlink(long itemId, long tagId) {
+        if (remove(tagItems, tagsByCount, tagId, itemId)) unusedTags.add(tagId);
+        if (remove(itemTags, itemsByCount, itemId, tagId) && allItems.contains(itemId)) untaggedItems.add(itemId);
+    }
+
+    /**
+     * Removes the links of the specified item but keeps the item.
+     */
+    public synchronized void removeLinks(long itemId) {
+        unlinkItem(itemId);
+        ++version;
+    }
+
+    /**
+     * Removes the item from the bitmaps of its tags only.
+     */
+    private void unlinkItem(long itemId) {
+        IdBitmap tagIds = itemTags.get(itemId);
+        if (tagIds == null) return;
+        for (long tagId : tagIds.toArray()) unlink(itemId, tagId);
+    }
+
+    /**
+     * Removes the specified items and their links.
+     */
+    public synchronized void removeItems(IdBitmap itemIds) {
+        for (long itemId : itemIds.toArray()) {
+            unlinkItem(itemId);
+            allItems.remove(itemId);
+            untaggedItems.remove(itemId);
+        }
+        ++version;
+    }
+
+    public synchronized void removeTag(long tagId) {
+        IdBitmap removed = tagItems.get(tagId);
+        if (removed != null) {
+            for (long itemId : removed.toArray()) unlink(itemId, tagId);
+        }
+        unusedTags.remove(tagId);
+        ++version;
+    }
+
+    /**
+     * Forgets the tags that have no items.
+     *
+     * @return the ids of the forgotten tags
+     */
+    public synchronized IdBitmap removeUnusedTags() {
+        IdBitmap removed = unusedTags;
+        unusedTags = new IdBitmap();
+        ++version;
+        return removed;
+    }
+
+    /**
+     * Moves the items of one tag to another.
+     */
+    public synchronized void mergeTag(long removeId, long keepId) {
+        IdBitmap removed = tagItems.get(removeId);
+        if (removed != null) {
+            for (long itemId : removed.toArray()) {
+                unlink(itemId, removeId);
+                link(itemId, keepId);
+            }
+        }
+        unusedTags.remove(removeId);
+        ++version;
+    }
+
+    /**
+     * @return the items of the specified tag, empty if the tag has no items
+     */
+    public synchronized IdBitmap getItems(long tagId) {
+        IdBitmap bitmap = tagItems.get(tagId);
+        return bitmap == null ? new IdBitmap() : bitmap.copy();
+    }
+
+    public synchronized IdBitmap getAllItems() {
+        return allItems.copy();
+    }
+
+    /**
+     * @return the items that have no tags
+     */
+    public synchronized IdBitmap getUntaggedItems() {
+        return peekUntaggedItems().copy();
+    }
+
+    public synchronized long getUntaggedItemCount() {
+        return untaggedItems.cardinality();
+    }
+
+    /**
+     * @return the tags that have no items
+     */
+    public synchronized IdBitmap getUnusedTags() {
+        return unusedTags.copy();
+    }
+
+    public synchronized long getUnusedTagCount() {
+        return unusedTags.cardinality();
+    }
+
+    /**
+     * The bitmap itself rather than a copy; the caller must hold the lock of this index and must not modify it.
+     */
+    IdBitmap peekUntaggedItems() {
+        return untaggedItems;
+    }
+
+    /**
+     * The bitmap itself rather than a copy; the caller must hold the lock of this index and must not modify it.
+     */
+    IdBitmap peekItems(long tagId) {
+        IdBitmap bitmap = tagItems.get(tagId);
+        return bitmap == null ? new IdBitmap() : bitmap;
+    }
+
+    /**
+     * The bitmap itself rather than a copy; the caller must hold the lock of this index and must not modify it.
+     */
+    IdBitmap peekAllItems() {
+        return allItems;
+    }
+
+    public synchronized long getItemCount(long tagId) {
+        IdBitmap bitmap = tagItems.get(tagId);
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    /**
+     * Intersects the items of the specified tags, starting with the smallest.
+     *
+     * @return the ids of the items tagged with all the specified tags
+     */
+    public synchronized IdBitmap intersect(long... tagIds) {
+        if (tagIds.length == 0) return new IdBitmap();
+
+        List<IdBitmap> bitmaps = new ArrayList<>(tagIds.length);
+        for (long tagId : tagIds) {
+            IdBitmap bitmap = tagItems.get(tagId);
+            if (bitmap == null) return new IdBitmap();
+            bitmaps.add(bitmap);
+        }
+        bitmaps.sort(Comparator.comparingLong(IdBitmap::cardinality));
+
+        IdBitmap result = bitmaps.get(0).copy();
+        for (int i = 1; i < bitmaps.size() && !result.isEmpty(); ++i)
+            result = result.and(bitmaps.get(i));
+        return result;
+    }
+
+    /**
+     * Reads the statistics of the indexed items off the counts kept by every change, without touching the database.
+     *
+     * @param tagCount the number of tags in the store, including those without items
+     */
+    public synchronized StoreStats getStats(long tagCount) {
+        Map<Long, Long> topTags = new LinkedHashMap<>(StoreStats.TOP_TAG_COUNT);
+        Iterator<long[]> itr = tagsByCount.descendingIterator();
+        while (itr.hasNext() && topTags.size() < StoreStats.TOP_TAG_COUNT) {
+            long[] entry = itr.next();
+            topTags.put(entry[0], entry[1]);
+        }
+        long[] mostTagged = itemsByCount.isEmpty() ? null : itemsByCount.last();
+
+        return new StoreStats(
+                allItems.cardinality(),
+                tagCount,
+                Math.max(0, tagCount - tagItems.size()),
+                untaggedItems.cardinality(),
+                mostTagged == null ? Globals.NULL_ID : mostTagged[0],
+                mostTagged == null ? 0 : mostTagged[1],
+                topTags
+        );
+    }
+
+    /**
+     * Orders {id, count} pairs by count, then by id in reverse so that the smaller id wins a tie.
+     */
+    private static int compareCounts(long[] a, long[] b) {
+        int c = Long.compare(a[1], b[1]);
+        return c != 0 ? c : Long.compare(b[0], a[0]);
+    }
+}
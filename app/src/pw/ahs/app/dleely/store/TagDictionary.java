@@ -0,0 +1,121 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static pw.ahs.app.dleely.Globals.NULL_ID;
+
+/**
+ * An in-memory mirror of the names and ids in the tag table of a store.
+ * It lets the store resolve tag ids without querying the database.
+ * Names are kept sorted, so tags can be looked up by name prefix.
+ */
+public class TagDictionary {
+    private final NavigableMap<String, Long> nameIdMap = new TreeMap<>();
+    private final Map<Long, String> idNameMap = new HashMap<>();
+    private long version = 0;
+
+    /**
+     * Replaces the content of this dictionary.
+     *
+     * @param rs a result set with {@code id} and {@code name} columns
+     */
+    public synchronized void load(ResultSet rs) throws SQLException {
+        clear();
+        while (rs.next())
+            put(rs.getLong("id"), rs.getString("name"));
+    }
+
+    /**
+     * @return the id of the tag with the specified name, {@link pw.ahs.app.dleely.Globals#NULL_ID} if not found
+     */
+    public synchronized long getId(String name) {
+        Long id = nameIdMap.get(name);
+        return id == null ? NULL_ID : id;
+    }
+
+    /**
+     * @return the name of the tag with the specified id, null if not found
+     */
+    public synchronized String getName(long id) {
+        return idNameMap.get(id);
+    }
+
+    /**
+     * @return the ids of the tags whose names start with the specified prefix, in name order
+     */
+    public synchronized long[] getIdsByPrefix(String prefix) {
+        long[] ids = new long[16];
+        int n = 0;
+        for (Map.Entry<String, Long> entry : nameIdMap.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) break;
+            if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+            ids[n++] = entry.getValue();
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * @return the ids of the tags whose names contain the specified text: those that start with it first,
+     * then the others, each in name order
+     */
+    public synchronized long[] getIdsContaining(String text) {
+        long[] prefixed = getIdsByPrefix(text);
+        long[] ids = Arrays.copyOf(prefixed, Math.max(16, prefixed.length));
+        int n = prefixed.length;
+        for (Map.Entry<String, Long> entry : nameIdMap.entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith(text) || !name.contains(text)) continue;
+            if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+            ids[n++] = entry.getValue();
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Adds a tag, or renames it if its id already exists.
+     */
+    public synchronized void put(long id, String name) {
+        String oldName = idNameMap.put(id, name);
+        if (oldName != null) nameIdMap.remove(oldName);
+        nameIdMap.put(name, id);
+        ++version;
+    }
+
+    public synchronized void remove(long id) {
+        String name = idNameMap.remove(id);
+        if (name != null) nameIdMap.remove(name);
+        ++version;
+    }
+
+    public synchronized void clear() {
+        nameIdMap.clear();
+        idNameMap.clear();
+        ++version;
+    }
+
+    /**
+     * @return a number that changes whenever the content of this dictionary changes
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return idNameMap.size();
+    }
+}
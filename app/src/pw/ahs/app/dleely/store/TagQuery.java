@@ -0,0 +1,352 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import static pw.ahs.app.dleely.Globals.NULL_ID;
+
+/**
+ * A parsed tag search query.
+ * <p>
+ * Syntax:
+ * <ul>
+ * <li>{@code java jvm} items tagged with both tags</li>
+ * <li>{@code java OR kotlin} (also {@code |}) items tagged with either tag</li>
+ * <li>{@code -android} (also {@code NOT android}) items not tagged with the tag</li>
+ * <li>{@code (jvm OR gc)} grouping</li>
+ * <li>{@code :untagged} items without tags</li>
+ * </ul>
+ * AND binds tighter than OR, so {@code a b OR c} means {@code (a b) OR c}.
+ * The parser is lenient with incomplete input, as queries are typed one key at a time:
+ * unclosed groups are closed at the end and dangling operators are ignored.
+ * <p>
+ * A query is evaluated against a {@link TagBitmapIndex}. Operands of AND are evaluated in ascending order
+ * of their estimated cardinality, and each operand is only evaluated within the items left by the previous ones,
+ * so a selective tag keeps the cost of the whole query close to a single tag lookup.
+ */
+public class TagQuery {
+    private final Node root;
+
+    private TagQuery(Node root) {
+        this.root = root;
+    }
+
+    public static TagQuery parse(String query) {
+        return new TagQuery(new Parser(query).parse());
+    }
+
+    /**
+     * @return the ids of the matching items
+     */
+    public IdBitmap evaluate(TagBitmapIndex index, TagDictionary dictionary) {
+        synchronized (index) {
+            Context ctx = new Context(index, dictionary);
+            // the result may be a bitmap of the index itself
+            return root.evaluate(ctx, null).copy();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    // evaluation
+
+    private static class Context {
+        private final TagBitmapIndex index;
+        private final TagDictionary dictionary;
+
+        private Context(TagBitmapIndex index, TagDictionary dictionary) {
+            this.index = index;
+            this.dictionary = dictionary;
+        }
+
+        private IdBitmap all() {
+            return index.peekAllItems();
+        }
+
+        private IdBitmap untagged() {
+            return index.peekUntaggedItems();
+        }
+    }
+
+    /**
+     * @return the items of the bitmap that are also in the candidates, or the bitmap itself if there are no candidates
+     */
+    private static IdBitmap restrict(IdBitmap bitmap, IdBitmap candidates) {
+        return candidates == null ? bitmap : candidates.and(bitmap);
+    }
+
+    private static abstract class Node {
+        /**
+         * @return an upper bound of the number of matching items
+         */
+        abstract long estimate(Context ctx);
+
+        /**
+         * @param candidates the items to choose from, null for all items
+         * @return the matching items among the candidates; must not be modified by the caller
+         */
+        abstract IdBitmap evaluate(Context ctx, IdBitmap candidates);
+    }
+
+    private static class Term extends Node {
+        private final String name;
+
+        private Term(String name) {
+            this.name = name;
+        }
+
+        private long tagId(Context ctx) {
+            return ctx.dictionary.getId(name);
+        }
+
+        @Override
+        long estimate(Context ctx) {
+            long id = tagId(ctx);
+            return id == NULL_ID ? 0 : ctx.index.getItemCount(id);
+        }
+
+        @Override
+        IdBitmap evaluate(Context ctx, IdBitmap candidates) {
+            long id = tagId(ctx);
+            if (id == NULL_ID) return new IdBitmap();
+            return restrict(ctx.index.peekItems(id), candidates);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class Untagged extends Node {
+        @Override
+        long estimate(Context ctx) {
+            return ctx.untagged().cardinality();
+        }
+
+        @Override
+        IdBitmap evaluate(Context ctx, IdBitmap candidates) {
+            return restrict(ctx.untagged(), candidates);
+        }
+
+        @Override
+        public String toString() {
+            return ":untagged";
+        }
+    }
+
+    private static class Not extends Node {
+        private final Node operand;
+
+        private Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        long estimate(Context ctx) {
+            return ctx.all().cardinality();
+        }
+
+        @Override
+        IdBitmap evaluate(Context ctx, IdBitmap candidates) {
+            IdBitmap from = candidates == null ? ctx.all() : candidates;
+            return from.andNot(operand.evaluate(ctx, from));
+        }
+
+        @Override
+        public String toString() {
+            return "-" + operand;
+        }
+    }
+
+    private static class And extends Node {
+        private final List<Node> operands;
+
+        private And(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        long estimate(Context ctx) {
+            long min = ctx.all().cardinality();
+            for (Node operand : operands)
+                if (!(operand instanceof Not)) min = Math.min(min, operand.estimate(ctx));
+            return min;
+        }
+
+        @Override
+        IdBitmap evaluate(Context ctx, IdBitmap candidates) {
+            // the most selective operands first, negations last as they can only shrink what is left
+            List<Node> positives = new ArrayList<>(operands.size());
+            List<Node> negatives = new ArrayList<>();
+            for (Node operand : operands)
+                (operand instanceof Not ? negatives : positives).add(operand);
+            positives.sort(Comparator.comparingLong(n -> n.estimate(ctx)));
+
+            IdBitmap result = candidates;
+            for (Node operand : positives) {
+                result = operand.evaluate(ctx, result);
+                if (result.isEmpty()) return result;
+            }
+            for (Node operand : negatives) {
+                result = operand.evaluate(ctx, result);
+                if (result.isEmpty()) return result;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " ");
+        }
+    }
+
+    private static class Or extends Node {
+        private final List<Node> operands;
+
+        private Or(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        long estimate(Context ctx) {
+            long sum = 0;
+            for (Node operand : operands) sum += operand.estimate(ctx);
+            return Math.min(sum, ctx.all().cardinality());
+        }
+
+        @Override
+        IdBitmap evaluate(Context ctx, IdBitmap candidates) {
+            IdBitmap result = new IdBitmap();
+            for (Node operand : operands)
+                result = result.or(operand.evaluate(ctx, candidates));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " OR ");
+        }
+    }
+
+    private static String join(List<Node> nodes, String separator) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < nodes.size(); ++i) {
+            if (i > 0) sb.append(separator);
+            sb.append(nodes.get(i));
+        }
+        return sb.append(')').toString();
+    }
+
+    // parsing
+
+    private static class Parser {
+        private final List<String> tokens = new ArrayList<>();
+        private int pos = 0;
+
+        private Parser(String query) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0; i < query.length(); ++i) {
+                char c = query.charAt(i);
+                if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '|') {
+                    flush(word);
+                    if (!Character.isWhitespace(c)) tokens.add(String.valueOf(c));
+                } else if (c == '-' && word.length() == 0) {
+                    tokens.add("-");
+                } else {
+                    word.append(c);
+                }
+            }
+            flush(word);
+        }
+
+        private void flush(StringBuilder word) {
+            if (word.length() == 0) return;
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+
+        private String peek() {
+            return pos < tokens.size() ? tokens.get(pos) : null;
+        }
+
+        private static boolean isOr(String token) {
+            return "OR".equals(token) || "|".equals(token);
+        }
+
+        private Node parse() {
+            Node node = parseOr();
+            // stray closing parentheses
+            while (peek() != null) {
+                ++pos;
+                Node rest = parseOr();
+                if (rest != null) node = node == null ? rest : and(node, rest);
+            }
+            return node == null ? new Or(new ArrayList<>()) : node;
+        }
+
+        private Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            Node node = parseAnd();
+            if (node != null) operands.add(node);
+            while (isOr(peek())) {
+                ++pos;
+                node = parseAnd();
+                if (node != null) operands.add(node);
+            }
+            if (operands.isEmpty()) return null;
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            String token;
+            while ((token = peek()) != null && !isOr(token) && !")".equals(token)) {
+                Node node = parseUnary();
+                if (node != null) operands.add(node);
+            }
+            if (operands.isEmpty()) return null;
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Node parseUnary() {
+            String token = peek();
+            ++pos;
+            if ("-".equals(token) || "NOT".equals(token)) {
+                String next = peek();
+                if (next == null || isOr(next) || ")".equals(next)) return null;
+                Node operand = parseUnary();
+                return operand == null ? null : new Not(operand);
+            }
+            if ("(".equals(token)) {
+                Node node = parseOr();
+                if (")".equals(peek())) ++pos;
+                return node;
+            }
+            if (":untagged".equalsIgnoreCase(token))
+                return new Untagged();
+            return new Term(token.toLowerCase(Locale.ROOT));
+        }
+
+        private static Node and(Node a, Node b) {
+            List<Node> operands = new ArrayList<>(2);
+            operands.add(a);
+            operands.add(b);
+            return new And(operands);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits text into the words kept in the full-text index.
+ * A word is a run of letters and digits, lower-cased, at least {@link #MIN_WORD_LENGTH} characters long.
+ * The same rules apply to indexed fields and to search queries, so a URL like {@code https://ahs.pw/dleely}
+ * is found by searching for {@code ahs}, {@code pw} or {@code dleely}.
+ */
+public class WordTokenizer {
+    public static final int MIN_WORD_LENGTH = 2;
+    public static final int MAX_WORD_LENGTH = 64;
+
+    private WordTokenizer() {
+    }
+
+    /**
+     * @return the distinct words of the specified text in order of appearance
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        tokenize(text, words);
+        return words;
+    }
+
+    /**
+     * Adds the words of the specified text to the specified collection.
+     */
+    public static void tokenize(String text, Collection<String> words) {
+        if (text == null) return;
+
+        int start = -1;
+        for (int i = 0, len = text.length(); i <= len; ++i) {
+            boolean wordChar = i < len && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                if (i - start >= MIN_WORD_LENGTH && i - start <= MAX_WORD_LENGTH)
+                    words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+}
@@ -39,6 +39,42 @@ CREATE TABLE tag_item(
 );
 --end
 
+--create_schema_version
+CREATE TABLE IF NOT EXISTS schema_version(
+    version INT NOT NULL PRIMARY KEY,
+    applied TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+--end
+
+--select_schema_version
+SELECT COALESCE(MAX(version), 0) FROM schema_version;
+--end
+
+--insert_schema_version
+INSERT INTO schema_version(version) VALUES(?);
+--end
+
+--migration_1
+--tag_item(tag_id, item_id) covers count_tag_items and the unused tag queries
+CREATE INDEX IF NOT EXISTS idx_tag_item_tag ON tag_item(tag_id, item_id);
+CREATE INDEX IF NOT EXISTS idx_tag_parent ON tag(parent_id);
+--end
+
+--migration_2
+CREATE INDEX IF NOT EXISTS idx_item_dateadd ON item(dateadd);
+CREATE INDEX IF NOT EXISTS idx_item_datemod ON item(datemod);
+--end
+
+--migration_3
+--full-text index: field is a mask of the SEARCH_*_MASK flags of the fields the word appears in
+CREATE TABLE IF NOT EXISTS item_word(
+    word VARCHAR NOT NULL,
+    item_id BIGINT NOT NULL REFERENCES item(id) ON DELETE CASCADE ON UPDATE CASCADE,
+    field INT NOT NULL,
+    PRIMARY KEY (word, item_id)
+);
+--end
+
 --clear_db
 DROP ALL OBJECTS;
 --end
@@ -51,6 +87,22 @@ SCRIPT TO ? COMPRESSION DEFLATE CIPHER AES PASSWORD ? CHARSET 'UTF-8';
 RUNSCRIPT FROM ? COMPRESSION DEFLATE CIPHER AES PASSWORD ? CHARSET 'UTF-8';
 --end
 
+--script_db
+SCRIPT TO ? CHARSET 'UTF-8';
+--end
+
+--run_script_db
+RUNSCRIPT FROM ? CHARSET 'UTF-8';
+--end
+
+--checkpoint
+CHECKPOINT SYNC;
+--end
+
+--snapshot_db
+BACKUP TO ?;
+--end
+
 --select_item_by_id
 SELECT * FROM item WHERE id = ?;
 --end
@@ -59,26 +111,39 @@ SELECT * FROM item WHERE id = ?;
 SELECT * FROM item WHERE ref = ?;
 --end
 
---select_items_by_id
-SELECT * FROM item WHERE id IN (CSV);
---end
-
 --select_all_items
 SELECT * FROM item;
 --end
 
 --select_all_items_2
-SELECT * FROM item LIMIT ? OFFSET ?;
+SELECT * FROM item ORDER BY id LIMIT ? OFFSET ?;
 --end
 
---select_untagged_items
-SELECT * FROM item WHERE id NOT IN (SELECT DISTINCT item_id FROM tag_item);
+--select_items_page
+SELECT * FROM item WHERE id > ? ORDER BY id LIMIT ?;
 --end
 
 --select_item_tags
 SELECT * FROM tag WHERE id IN (SELECT tag_id FROM tag_item WHERE item_id = ?);
 --end
 
+--select_items_tags
+SELECT tag_item.item_id AS item_id, tag.*
+FROM TABLE(id BIGINT = ?) ids
+JOIN tag_item ON tag_item.item_id = ids.id
+JOIN tag ON tag.id = tag_item.tag_id;
+--end
+
+--select_items_by_refs
+SELECT item.* FROM TABLE(ref VARCHAR = ?) refs JOIN item ON item.ref = refs.ref;
+--end
+
+--select_item_ids_by_ref
+SELECT item.id, item.ref
+FROM TABLE(ref VARCHAR = ?) refs
+JOIN item ON item.ref = refs.ref;
+--end
+
 --select_tag_by_id
 SELECT * FROM tag WHERE id = ?;
 --end
@@ -87,8 +152,30 @@ SELECT * FROM tag WHERE id = ?;
 SELECT * FROM tag WHERE name = ?;
 --end
 
---select_tags_by_id
-SELECT * FROM tag WHERE id IN (CSV);
+--select_tags_by_name
+SELECT tag.*
+FROM TABLE(name VARCHAR = ?) names
+JOIN tag ON tag.name = names.name;
+--end
+
+--select_item_ids
+SELECT id FROM item ORDER BY id;
+--end
+
+--select_tag_item_links
+SELECT tag_id, item_id FROM tag_item ORDER BY tag_id, item_id;
+--end
+
+--select_items_by_ids
+SELECT item.* FROM TABLE(id BIGINT = ?) ids JOIN item ON item.id = ids.id ORDER BY item.id;
+--end
+
+--select_tag_names
+SELECT id, name FROM tag;
+--end
+
+--select_tags_by_ids
+SELECT tag.* FROM TABLE(id BIGINT = ?) ids JOIN tag ON tag.id = ids.id ORDER BY tag.id;
 --end
 
 --select_tags
@@ -96,11 +183,11 @@ SELECT * FROM tag;
 --end
 
 --select_tags_2
-SELECT * FROM tag LIMIT ? OFFSET ?;
+SELECT * FROM tag ORDER BY id LIMIT ? OFFSET ?;
 --end
 
---select_unused_tags
-SELECT * FROM tag WHERE id NOT IN (SELECT DISTINCT tag_id FROM tag_item);
+--select_tags_page
+SELECT * FROM tag WHERE id > ? ORDER BY id LIMIT ?;
 --end
 
 --select_most_used_tag
@@ -121,10 +208,30 @@ SELECT * FROM tag WHERE id IN (
 );
 --end
 
---select_date_time_count
-select FORMATDATETIME(dateadd, 'yyyy-MM-dd') as "Date", count(*) as "Count"
-from item
-group by dateadd;
+--count_items_by_dateadd_day
+SELECT CAST(dateadd AS DATE) AS day, COUNT(*) AS total FROM item
+GROUP BY CAST(dateadd AS DATE);
+--end
+
+--count_items_by_dateadd_day_range
+SELECT CAST(dateadd AS DATE) AS day, COUNT(*) AS total FROM item
+WHERE dateadd >= ? AND dateadd < ?
+GROUP BY CAST(dateadd AS DATE);
+--end
+
+--count_items_by_datemod_day
+SELECT CAST(datemod AS DATE) AS day, COUNT(*) AS total FROM item
+GROUP BY CAST(datemod AS DATE);
+--end
+
+--count_items_by_datemod_day_range
+SELECT CAST(datemod AS DATE) AS day, COUNT(*) AS total FROM item
+WHERE datemod >= ? AND datemod < ?
+GROUP BY CAST(datemod AS DATE);
+--end
+
+--select_item_dates_by_ids
+SELECT item.id, item.dateadd, item.datemod FROM TABLE(id BIGINT = ?) ids JOIN item ON item.id = ids.id;
 --end
 
 --select_most_tagged_item
@@ -136,6 +243,20 @@ SELECT * FROM item WHERE id IN (
 );
 --end
 
+--select_most_tagged_item_count
+SELECT item_id AS id, COUNT(tag_id) AS total FROM tag_item
+GROUP BY item_id
+ORDER BY total DESC, item_id
+LIMIT 1;
+--end
+
+--select_top_tag_counts
+SELECT tag_id AS id, COUNT(item_id) AS total FROM tag_item
+GROUP BY tag_id
+ORDER BY total DESC, tag_id
+LIMIT ?;
+--end
+
 --insert_item
 INSERT INTO item(name, ref, info, privy, dateadd, datemod)
 SELECT * FROM
@@ -163,8 +284,8 @@ SELECT * FROM
 WHERE NOT EXISTS (SELECT id FROM tag WHERE name = entry.name);
 --end
 
---insert_tag_item_map
-INSERT INTO tag_item (item_id, tag_id) values(?, (SELECT id FROM tag WHERE name = ?));
+--insert_tag_item
+INSERT INTO tag_item (item_id, tag_id) VALUES(?, ?);
 --end
 
 --update_item
@@ -219,11 +340,11 @@ DELETE FROM item WHERE id IN (SELECT item_id FROM tag_item WHERE tag_id = ?);
 --end
 
 --remove_unused_tags
-DELETE FROM tag WHERE id NOT IN (SELECT DISTINCT tag_id FROM tag_item);
+DELETE FROM tag WHERE NOT EXISTS (SELECT 1 FROM tag_item WHERE tag_item.tag_id = tag.id);
 --end
 
 --remove_items
-DELETE FROM item WHERE id IN (CSV);
+DELETE FROM item WHERE id IN (SELECT id FROM TABLE(id BIGINT = ?));
 --end
 
 --replace_tag
@@ -242,7 +363,9 @@ SELECT COUNT(id) AS TOTAL FROM item;
 --end
 
 --count_untagged_items
-SELECT COUNT(id) AS TOTAL FROM item WHERE id NOT IN (SELECT DISTINCT item_id FROM tag_item);
+SELECT COUNT(item.id) AS TOTAL FROM item
+LEFT JOIN tag_item ON tag_item.item_id = item.id
+WHERE tag_item.item_id IS NULL;
 --end
 
 --count_tags
@@ -253,26 +376,66 @@ SELECT COUNT(id) AS TOTAL FROM tag;
 SELECT COUNT(item_id) AS TOTAL FROM tag_item WHERE tag_id = ?;
 --end
 
+--count_tags_items
+SELECT ids.id AS tag_id, COUNT(tag_item.item_id) AS total
+FROM TABLE(id BIGINT = ?) ids
+LEFT JOIN tag_item ON tag_item.tag_id = ids.id
+GROUP BY ids.id;
+--end
+
 --count_item_tags
 SELECT COUNT(tag_id) AS TOTAL FROM tag_item WHERE item_id = ?;
 --end
 
 --count_unused_tags
-SELECT COUNT(id) AS TOTAL FROM tag WHERE id NOT IN (SELECT DISTINCT tag_id FROM tag_item);
+SELECT COUNT(id) AS TOTAL FROM tag WHERE NOT EXISTS (SELECT 1 FROM tag_item WHERE tag_item.tag_id = tag.id);
 --end
 
---search_tags
-SELECT * FROM tag WHERE name LIKE ?;
+--insert_item_word
+INSERT INTO item_word (word, item_id, field) VALUES(?, ?, ?);
 --end
 
---search_items
-SELECT * FROM item
-WHERE id IN (
-    SELECT item_id FROM tag_item
-    WHERE tag_id IN (
-        SELECT DISTINCT id FROM tag WHERE name IN (CSV)
+--remove_item_words
+DELETE FROM item_word WHERE item_id = ?;
+--end
+
+--clear_item_words
+DELETE FROM item_word;
+--end
+
+--search_item_words
+SELECT item.* FROM item JOIN (
+    SELECT item_id FROM (
+        SELECT item_word.item_id AS item_id, item_word.word AS word
+        FROM TABLE(word VARCHAR = ?) words
+        JOIN item_word ON item_word.word = words.word
+        WHERE BITAND(item_word.field, ?) <> 0
+        UNION
+        SELECT tag_item.item_id AS item_id, tag.name AS word
+        FROM TABLE(word VARCHAR = ?) words
+        JOIN tag ON tag.name = words.word
+        JOIN tag_item ON tag_item.tag_id = tag.id
+        WHERE CAST(? AS BOOLEAN)
     )
     GROUP BY item_id
     HAVING COUNT(item_id) = ?
+) found ON found.item_id = item.id
+ORDER BY item.id;
+--end
+
+--search_items_like
+SELECT * FROM item
+WHERE NOT EXISTS (
+    SELECT term FROM TABLE(term VARCHAR = ?) terms
+    WHERE NOT (
+        (CAST(? AS BOOLEAN) AND LOWER(item.name) LIKE terms.term)
+        OR (CAST(? AS BOOLEAN) AND LOWER(item.ref) LIKE terms.term)
+        OR (CAST(? AS BOOLEAN) AND LOWER(item.info) LIKE terms.term)
+        OR (CAST(? AS BOOLEAN) AND EXISTS (
+            SELECT tag_item.item_id FROM tag_item JOIN tag ON tag.id = tag_item.tag_id
+            WHERE tag_item.item_id = item.id AND tag.name LIKE terms.term
+        ))
+    )
 )
+ORDER BY id;
 --end
\ No newline at end of file
@@ -12,10 +12,13 @@ package pw.ahs.app.dleely.importer;
 import org.junit.Test;
 import pw.ahs.app.dleely.controller.Controller;
 import pw.ahs.app.dleely.model.Item;
+import pw.ahs.app.dleely.model.Tag;
 
+import java.io.BufferedReader;
 import java.io.StringReader;
 
 import static junit.framework.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class CsvImporterTest {
 
@@ -96,5 +99,95 @@ public class CsvImporterTest {
         assertFalse(csvImporter.hasNext());
     }
 
+    @Test
+    public void testQuotedFields() throws Exception {
+        StringReader stringReader = new StringReader(
+                "name,ref,info,privy,tags,dateadd,datemod\r\n" +
+                        "\"item, 1\",\"ref 1\",\"line 1\r\nline 2 \"\"quoted\"\"\",\"1\",\"tag11 tag12\",\"\",\"\"\r\n" +
+                        "\"item 2\",\"ref 2\",\"\",\"0\",\"\",\"\",\"\"\r\n"
+        );
+        CsvImporter csvImporter = CsvImporter.getDleelyInstance(stringReader);
+
+        Item i = csvImporter.nextItem();
+        assertEquals("item, 1", i.getName());
+        assertEquals("ref 1", i.getRef());
+        assertEquals("line 1\r\nline 2 \"quoted\"", i.getInfo());
+        assertTrue(i.getPrivy());
+        assertEquals("tag11 tag12", i.getTagsText(" "));
+
+        i = csvImporter.nextItem();
+        assertEquals("item 2", i.getName());
+        assertTrue(i.getTags().isEmpty());
+
+        assertFalse(csvImporter.hasNext());
+        assertEquals(2, csvImporter.getImportedCount());
+    }
+
+    /**
+     * Prints the time it takes to parse a large file with the importers and with the former
+     * line splitting parser. Skipped unless run with {@code -Ddleely.bench=true}.
+     */
+    @Test
+    public void benchParse() throws Exception {
+        assumeTrue("benchmarks run with -Ddleely.bench=true", Boolean.getBoolean("dleely.bench"));
+        int size = 100000;
+        StringBuilder dleely = new StringBuilder("name,ref,info,privy,tags,dateadd,datemod\n");
+        StringBuilder diigo = new StringBuilder("title,url,tags,comments,annotations\n");
+        for (int i = 0; i < size; ++i) {
+            dleely.append(String.format("\"item %d\",\"http://example.com/%d\",\"info %d\",\"0\",\"tag%d tag%d tag%d\",\"1343919044665\",\"1348613704212\"%n",
+                    i, i, i, i % 10, i % 100, i % 1000));
+            diigo.append(String.format("\"item %d\",\"http://example.com/%d\",\"tag%d tag%d tag%d\",\"info %d\",\"\"%n",
+                    i, i, i % 10, i % 100, i % 1000, i));
+        }
+
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            assertEquals(size, countFormerItems(dleely.toString(), 7));
+            long split = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertEquals(size, countItems(CsvImporter.getDleelyInstance(new StringReader(dleely.toString()))));
+            long dleelyElapsed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertEquals(size, countItems(CsvImporter.getDiigoInstance(new StringReader(diigo.toString()))));
+            long diigoElapsed = System.nanoTime() - start;
+
+            System.out.printf("csv: %d records, former dleely %4d ms, dleely %4d ms, diigo %4d ms%n",
+                    size, split / 1000000, dleelyElapsed / 1000000, diigoElapsed / 1000000);
+        }
+    }
 
+    private static long countItems(CsvImporter importer) throws Exception {
+        long count = 0;
+        while (importer.hasNext()) {
+            importer.nextItem();
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * The former Dleely importer: split each line, then trim the quotes of every field and of every tag.
+     */
+    private static long countFormerItems(String csv, int fields) throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader(csv));
+        long count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] values = line.split("\",\"");
+            if (values.length < fields) continue;
+            Item item = new Item(Controller.util.trimQuotes(values[0]), Controller.util.trimQuotes(values[1]));
+            item.setInfo(Controller.util.trimQuotes(values[2]));
+            item.setPrivy(Controller.util.trimQuotes(values[3]).equalsIgnoreCase("1"));
+            for (String tag : values[4].split(" ")) {
+                tag = Controller.util.trimQuotes(tag);
+                if (Tag.isValidTagName(tag)) item.getTags().add(Tag.getInstance(tag));
+            }
+            item.setDateAdd(Controller.util.toLocalDateTime(Controller.util.trimQuotes(values[5])));
+            item.setDateMod(Controller.util.toLocalDateTime(Controller.util.trimQuotes(values[6])));
+            ++count;
+        }
+        return count;
+    }
 }
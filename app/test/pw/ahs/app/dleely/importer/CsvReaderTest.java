@@ -0,0 +1,89 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class CsvReaderTest {
+
+    private static List<List<String>> readAll(CsvReader csv) throws Exception {
+        List<List<String>> records = new ArrayList<>();
+        while (csv.nextRecord()) {
+            List<String> fields = new ArrayList<>();
+            for (int i = 0; i < csv.getFieldCount(); ++i) fields.add(csv.getField(i));
+            records.add(fields);
+        }
+        return records;
+    }
+
+    @Test
+    public void testRecords() throws Exception {
+        CsvReader csv = new CsvReader(new StringReader(
+                "a,b,c\r\n" +
+                        "\r\n" +
+                        "\"a, b\",\"line 1\nline 2\",\"say \"\"hi\"\"\"\n" +
+                        ",\"\",\n" +
+                        "last,\"no end of line\""
+        ));
+        List<List<String>> records = readAll(csv);
+
+        assertEquals(4, records.size());
+        assertEquals(Arrays.asList("a", "b", "c"), records.get(0));
+        assertEquals(Arrays.asList("a, b", "line 1\nline 2", "say \"hi\""), records.get(1));
+        assertEquals(Arrays.asList("", "", ""), records.get(2));
+        assertEquals(Arrays.asList("last", "no end of line"), records.get(3));
+        assertFalse(csv.nextRecord());
+    }
+
+    @Test
+    public void testStrayQuotes() throws Exception {
+        // older exports did not escape quotes inside quoted fields
+        CsvReader csv = new CsvReader(new StringReader("\"say \"hi\" there\",x\"y\n"));
+        assertEquals(Arrays.asList(Arrays.asList("say \"hi\" there", "x\"y")), readAll(csv));
+    }
+
+    @Test
+    public void testLongRecord() throws Exception {
+        // records spanning several blocks grow the buffers
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) sb.append('"').append(i).append("\r\n\",");
+        sb.append("end\r\nnext");
+        CsvReader csv = new CsvReader(new StringReader(sb.toString()));
+
+        assertTrue(csv.nextRecord());
+        assertEquals(5001, csv.getFieldCount());
+        assertEquals("4999\r\n", csv.getField(4999));
+        assertTrue(csv.fieldEquals(5000, "end"));
+        assertTrue(csv.nextRecord());
+        assertEquals("next", csv.getField(0));
+        assertFalse(csv.nextRecord());
+    }
+
+    @Test
+    public void testSplitField() throws Exception {
+        CsvReader csv = new CsvReader(new StringReader("\" tag1  tag2 tag3 \",\"\"\n"));
+        assertTrue(csv.nextRecord());
+
+        List<String> parts = new ArrayList<>();
+        csv.splitField(0, ' ', parts);
+        assertEquals(Arrays.asList("tag1", "tag2", "tag3"), parts);
+        parts.clear();
+        csv.splitField(1, ' ', parts);
+        assertTrue(parts.isEmpty());
+        assertTrue(csv.isFieldEmpty(1));
+    }
+}
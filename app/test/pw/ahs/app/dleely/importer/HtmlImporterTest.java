@@ -14,8 +14,10 @@ import pw.ahs.app.dleely.controller.Controller;
 import pw.ahs.app.dleely.model.Item;
 
 import java.io.StringReader;
+import java.sql.Timestamp;
 
 import static junit.framework.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class HtmlImporterTest {
 
@@ -122,4 +124,89 @@ public class HtmlImporterTest {
 
         assertFalse(htmlImporter.hasNext());
     }
+
+    private static final String FOLDERS =
+            "<!DOCTYPE NETSCAPE-Bookmark-file-1>\n" +
+                    "<H1>Bookmarks</H1>\n" +
+                    "<DL><p>\n" +
+                    "    <DT><H3 ADD_DATE=\"1343919044\">Dev Tools</H3>\n" +
+                    "    <DL><p>\n" +
+                    "        <DT><H3>Java &amp; JVM</H3>\n" +
+                    "        <DL><p>\n" +
+                    "            <DT><A HREF=\"http://a.example/?x=1&amp;y=2\" ADD_DATE=\"1343919044\"\n" +
+                    "                TAGS=\"jvm\">H2 &lt;DB&gt; &#8211; &quot;docs&quot;</A>\n" +
+                    "            <DD>info <i>a</i>\n" +
+                    "        </DL><p>\n" +
+                    "        <DT><A HREF=\"http://b.example\">b</A>\n" +
+                    "    </DL><p>\n" +
+                    "    <DT><H3>!!!</H3>\n" +
+                    "    <DL><p>\n" +
+                    "        <DT><A HREF=\"http://c.example\">c</A>\n" +
+                    "    </DL><p>\n" +
+                    "    <DT><A HREF=\"http://d.example\">d</A>\n" +
+                    "</DL><p>\n";
+
+    @Test
+    public void testFolders() throws Exception {
+        HtmlImporter htmlImporter = HtmlImporter.getNetscapeInstance(new StringReader(FOLDERS), true);
+
+        Item i = htmlImporter.nextItem();
+        assertEquals("H2 <DB> \u2013 \"docs\"", i.getName());
+        assertEquals("http://a.example/?x=1&y=2", i.getRef());
+        assertEquals("info", i.getInfo());
+        assertEquals("dev_tools java_jvm jvm", i.getTagsText(" "));
+        // browsers export seconds rather than milliseconds
+        assertEquals(Controller.util.toLocalDateTime(new Timestamp(1343919044000L)), i.getDateAdd());
+
+        i = htmlImporter.nextItem();
+        assertEquals("b", i.getName());
+        assertEquals("dev_tools", i.getTagsText(" "));
+
+        // a folder name with nothing usable as a tag name adds no tag
+        i = htmlImporter.nextItem();
+        assertEquals("c", i.getName());
+        assertEquals("", i.getTagsText(" "));
+
+        i = htmlImporter.nextItem();
+        assertEquals("d", i.getName());
+        assertEquals("", i.getTagsText(" "));
+        assertFalse(htmlImporter.hasNext());
+
+        htmlImporter = HtmlImporter.getNetscapeInstance(new StringReader(FOLDERS));
+        i = htmlImporter.nextItem();
+        assertEquals("jvm", i.getTagsText(" "));
+        i = htmlImporter.nextItem();
+        assertEquals("", i.getTagsText(" "));
+    }
+
+    /**
+     * Prints the time it takes to parse a large bookmark file. Skipped unless run with {@code -Ddleely.bench=true}.
+     */
+    @Test
+    public void benchParse() throws Exception {
+        assumeTrue("benchmarks run with -Ddleely.bench=true", Boolean.getBoolean("dleely.bench"));
+        int size = 200000;
+        StringBuilder sb = new StringBuilder("<!DOCTYPE NETSCAPE-Bookmark-file-1>\n<H1>Bookmarks</H1>\n<DL><p>\n");
+        for (int i = 0; i < size; ++i) {
+            if (i % 100 == 0) sb.append(String.format("<DT><H3>folder %d</H3>%n<DL><p>%n", i / 100));
+            sb.append(String.format("<DT><A HREF=\"http://example.com/%d\" ADD_DATE=\"1343919044\" LAST_MODIFIED=\"1348613704\" PRIVATE=\"0\" TAGS=\"tag%d,tag%d\">item %d</A>%n<DD>info %d%n",
+                    i, i % 10, i % 100, i, i));
+            if (i % 100 == 99) sb.append(String.format("</DL><p>%n"));
+        }
+        sb.append("</DL><p>\n");
+
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            HtmlImporter htmlImporter = HtmlImporter.getNetscapeInstance(new StringReader(sb.toString()), true);
+            long count = 0;
+            while (htmlImporter.hasNext()) {
+                htmlImporter.nextItem();
+                ++count;
+            }
+            long elapsed = System.nanoTime() - start;
+            assertEquals(size, count);
+
+            System.out.printf("netscape: %d links, %4d ms%n", size, elapsed / 1000000);
+        }
+    }
 }
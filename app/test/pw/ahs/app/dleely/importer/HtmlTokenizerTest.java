@@ -0,0 +1,62 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static junit.framework.Assert.*;
+
+public class HtmlTokenizerTest {
+
+    @Test
+    public void testTokens() throws Exception {
+        HtmlTokenizer html = new HtmlTokenizer(new StringReader(
+                "<!DOCTYPE html><!-- a <b>comment</b> -- -->" +
+                        "<A href=x.html Private='1' tags=\"a,b\" checked>1 < 2 &amp;&#x41;&unknown; &</a >" +
+                        "<BR/>"
+        ));
+
+        assertEquals(HtmlTokenizer.Token.START_TAG, html.next());
+        assertEquals("a", html.getTagName());
+        assertEquals("x.html", html.getAttribute("href"));
+        assertEquals("1", html.getAttribute("private"));
+        assertEquals("a,b", html.getAttribute("tags"));
+        assertEquals("", html.getAttribute("checked"));
+        assertNull(html.getAttribute("add_date"));
+
+        assertEquals(HtmlTokenizer.Token.TEXT, html.next());
+        assertEquals("1 ", html.getText());
+        // a '<' that does not start a tag is text
+        assertEquals(HtmlTokenizer.Token.TEXT, html.next());
+        assertEquals("< 2 &A&unknown; &", html.getText());
+
+        assertEquals(HtmlTokenizer.Token.END_TAG, html.next());
+        assertTrue(html.isTag("a"));
+        assertEquals(HtmlTokenizer.Token.START_TAG, html.next());
+        assertTrue(html.isTag("br"));
+        assertEquals(HtmlTokenizer.Token.END, html.next());
+    }
+
+    @Test
+    public void testLongText() throws Exception {
+        StringBuilder sb = new StringBuilder("<p>");
+        for (int i = 0; i < HtmlTokenizer.MAX_TEXT_LENGTH * 2; ++i) sb.append('x');
+        sb.append("</p>");
+        HtmlTokenizer html = new HtmlTokenizer(new StringReader(sb.toString()));
+
+        assertEquals(HtmlTokenizer.Token.START_TAG, html.next());
+        assertEquals(HtmlTokenizer.Token.TEXT, html.next());
+        assertEquals(HtmlTokenizer.MAX_TEXT_LENGTH, html.getText().length());
+        assertEquals(HtmlTokenizer.Token.END_TAG, html.next());
+        assertEquals(HtmlTokenizer.Token.END, html.next());
+    }
+}
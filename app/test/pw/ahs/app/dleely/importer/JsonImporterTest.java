@@ -10,10 +10,16 @@
 package pw.ahs.app.dleely.importer;
 
 import org.junit.Test;
+import pw.ahs.app.dleely.Globals;
 import pw.ahs.app.dleely.controller.Controller;
+import pw.ahs.app.dleely.exporter.TextExporter;
 import pw.ahs.app.dleely.model.Item;
+import pw.ahs.app.dleely.model.Tag;
 
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 
 import static junit.framework.Assert.*;
 
@@ -108,4 +114,74 @@ public class JsonImporterTest {
         assertFalse(i.getPrivy());
         assertEquals("tag31 tag32 tag33", i.getTagsText(" "));
     }
+
+    @Test
+    public void testEscapesAndLayout() throws Exception {
+        // one line, escaped quotes, unknown and nested members, values that are not strings
+        StringReader stringReader = new StringReader(
+                "[{\"ref\":\"ref 1\",\"name\":\"say \\\"hi\\\"\",\"info\":\"line 1\\nline 2\",\"privy\":true," +
+                        "\"extra\":{\"name\":\"not this\",\"list\":[1,2]},\"tags\":\"tag1 tag2\",\"dateadd\":1343919044665}," +
+                        "{\"name\":\"item 2\",\"ref\":\"ref 2\",\"info\":null,\"datemod\":\"\"}]"
+        );
+
+        JsonImporter jsonImporter = JsonImporter.getDleelyInstance(stringReader);
+
+        Item i = jsonImporter.nextItem();
+        assertEquals("say \"hi\"", i.getName());
+        assertEquals("ref 1", i.getRef());
+        assertEquals("line 1\nline 2", i.getInfo());
+        assertTrue(i.getPrivy());
+        assertEquals("tag1 tag2", i.getTagsText(" "));
+        assertEquals(Controller.util.toLocalDateTime("1343919044665"), i.getDateAdd());
+
+        i = jsonImporter.nextItem();
+        assertEquals("item 2", i.getName());
+        assertFalse(i.getPrivy());
+
+        assertFalse(jsonImporter.hasNext());
+    }
+
+    @Test
+    public void testExportRoundTrip() throws Exception {
+        Item item = new Item("say \"hi\" \\o/", "file:///C:\\users\\Anas\\new");
+        item.setInfo("C:\\Users\\Anas\n\tindented \u0628 \u0001");
+        item.setPrivy(true);
+        item.getTags().addAll(Arrays.asList(Tag.getInstance("tag1"), Tag.getInstance("tag2")));
+        item.setDateAdd(LocalDateTime.of(2013, 5, 21, 4, 14));
+        item.setDateMod(LocalDateTime.of(2013, 5, 22, 4, 14));
+
+        StringWriter stringWriter = new StringWriter();
+        TextExporter textExporter = new TextExporter(
+                stringWriter,
+                TextExporter.TextExportFormatter.getDleelyJsonFormatter(),
+                Globals.EXPORT_CONFIGS_SKIP_ID_ONLY
+        );
+        textExporter.put(item);
+        textExporter.close();
+
+        JsonImporter jsonImporter = JsonImporter.getDleelyInstance(new StringReader(stringWriter.toString()));
+        Item i = jsonImporter.nextItem();
+        assertEquals(item.getName(), i.getName());
+        assertEquals(item.getRef(), i.getRef());
+        assertEquals(item.getInfo(), i.getInfo());
+        assertTrue(i.getPrivy());
+        assertEquals(item.getTags(), i.getTags());
+        assertEquals(item.getDateAdd(), i.getDateAdd());
+        assertEquals(item.getDateMod(), i.getDateMod());
+        assertFalse(jsonImporter.hasNext());
+    }
+
+    @Test
+    public void testUnescapedExport() throws Exception {
+        // older exports wrote backslashes as they were
+        StringReader stringReader = new StringReader(
+                "[\n\t{\n\t\"name\":\"item 1\",\n\t\"ref\":\"file:///C:\\users\\Anas\",\n\t\"info\":\"C:\\Users\\Anas \\u12\",\n\t}\n]"
+        );
+
+        JsonImporter jsonImporter = JsonImporter.getDleelyInstance(stringReader);
+        Item i = jsonImporter.nextItem();
+        assertEquals("file:///C:\\users\\Anas", i.getRef());
+        assertEquals("C:\\Users\\Anas \\u12", i.getInfo());
+        assertFalse(jsonImporter.hasNext());
+    }
 }
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static junit.framework.Assert.*;
+import static pw.ahs.app.dleely.importer.JsonTokenizer.Token.*;
+
+public class JsonTokenizerTest {
+
+    private static void assertToken(JsonTokenizer json, JsonTokenizer.Token token, String text) throws Exception {
+        assertEquals(token, json.next());
+        assertEquals(text, json.getText());
+    }
+
+    @Test
+    public void testTokens() throws Exception {
+        JsonTokenizer json = new JsonTokenizer(new StringReader(
+                "[{\"a\": \"x \\\"y\\\" \\\\ \\/ \\u0628\\n\", \"b\":-1.5e3, \"c\": [true, null], \"d\": {}},]"));
+
+        assertEquals(BEGIN_ARRAY, json.next());
+        assertEquals(BEGIN_OBJECT, json.next());
+        assertToken(json, NAME, "a");
+        assertToken(json, STRING, "x \"y\" \\ / ب\n");
+        assertToken(json, NAME, "b");
+        assertToken(json, NUMBER, "-1.5e3");
+        assertToken(json, NAME, "c");
+        assertEquals(BEGIN_ARRAY, json.next());
+        assertToken(json, LITERAL, "true");
+        assertToken(json, LITERAL, "null");
+        assertEquals(END_ARRAY, json.next());
+        assertToken(json, NAME, "d");
+        assertEquals(BEGIN_OBJECT, json.next());
+        assertEquals(END_OBJECT, json.next());
+        assertEquals(END_OBJECT, json.next());
+        assertEquals(END_ARRAY, json.next());
+        assertEquals(END, json.next());
+    }
+
+    @Test
+    public void testSkipContainer() throws Exception {
+        JsonTokenizer json = new JsonTokenizer(new StringReader("{\"a\": {\"b\": [1, {\"c\": 2}]}, \"d\": 3}"));
+
+        assertEquals(BEGIN_OBJECT, json.next());
+        assertToken(json, NAME, "a");
+        assertEquals(BEGIN_OBJECT, json.next());
+        json.skipContainer();
+        assertToken(json, NAME, "d");
+        assertToken(json, NUMBER, "3");
+        assertEquals(END_OBJECT, json.next());
+        assertEquals(END, json.next());
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        for (String text : new String[]{"[{\"a\": 1]", "[\"unterminated", "{\"a\": nope}", "[1"}) {
+            JsonTokenizer json = new JsonTokenizer(new StringReader(text));
+            try {
+                while (json.next() != END) ;
+                fail(text);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("malformed JSON at line 1"));
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.importer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pw.ahs.app.dleely.model.Item;
+import pw.ahs.app.dleely.model.Tag;
+import pw.ahs.app.dleely.store.H2DBStore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class ParallelCsvImporterTest {
+    private Path filePath;
+
+    @Before
+    public void setUp() throws Exception {
+        filePath = Files.createTempFile("dleely", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(filePath);
+    }
+
+    private void writeDleelyCsv(int size) throws Exception {
+        StringBuilder sb = new StringBuilder("name,ref,info,privy,tags,dateadd,datemod\n");
+        for (int i = 0; i < size; ++i) {
+            // quoted line breaks, commas and quotes must not be taken for record boundaries
+            String info = i % 3 == 0 ? "line 1\n\"\"line\"\" 2,\n" : "info العربية " + i;
+            sb.append(String.format("\"item %d\",\"ref %d\",\"%s\",\"%d\",\"tag%d tag%d\",\"1343919044665\",\"\"\r\n",
+                    i, i, info, i % 2, i % 10, i % 7));
+        }
+        Files.write(filePath, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Item> loadAll(Importer importer) throws Exception {
+        List<Item> items = new ArrayList<>();
+        try (Importer i = importer) {
+            i.loadAllItems(items);
+        }
+        return items;
+    }
+
+    @Test
+    public void testSameAsSerial() throws Exception {
+        writeDleelyCsv(5000);
+        List<Item> expected = loadAll(CsvImporter.getDleelyInstance(filePath));
+
+        // small chunks, so that most of them split a record
+        ParallelCsvImporter importer = new ParallelCsvImporter(filePath, CsvImporter::getDleelyInstance, 1000);
+        assertTrue(importer.getChunkCount() > 100);
+        List<Item> actual = loadAll(importer);
+
+        assertEquals(5000, expected.size());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.size(), importer.getImportedCount());
+        for (int i = 0; i < expected.size(); ++i) {
+            Item e = expected.get(i);
+            Item a = actual.get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getRef(), a.getRef());
+            assertEquals(e.getInfo(), a.getInfo());
+            assertEquals(e.getPrivy(), a.getPrivy());
+            assertEquals(e.getTags(), a.getTags());
+            assertEquals(e.getDateAdd(), a.getDateAdd());
+        }
+        // the info is trimmed by the item
+        assertEquals("line 1\n\"line\" 2,", actual.get(0).getInfo());
+    }
+
+    @Test
+    public void testSmallFiles() throws Exception {
+        assertTrue(loadAll(ParallelCsvImporter.getDleelyInstance(filePath)).isEmpty());
+
+        Files.write(filePath, "\"item 1\",\"ref 1\",\"tag1 tag2\",\"info 1\",\"\"".getBytes(StandardCharsets.UTF_8));
+        List<Item> items = loadAll(ParallelCsvImporter.getDiigoInstance(filePath));
+        assertEquals(1, items.size());
+        assertEquals("tag1 tag2", items.get(0).getTagsText(" "));
+    }
+
+    @Test
+    public void testRepeatedTags() throws Exception {
+        // names no other test has created, so that the chunks race to create them
+        String prefix = "rep" + Long.toString(System.nanoTime(), 36);
+        int size = 20000;
+        StringBuilder sb = new StringBuilder("name,ref,info,privy,tags,dateadd,datemod\n");
+        for (int i = 0; i < size; ++i)
+            sb.append(String.format("\"item %d\",\"ref %d\",\"\",\"0\",\"%s%d %s%d\",\"\",\"\"\n",
+                    i, i, prefix, i % 500, prefix, 500 + i % 3));
+        Files.write(filePath, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        ParallelCsvImporter importer = new ParallelCsvImporter(filePath, CsvImporter::getDleelyInstance, 4096);
+        assertTrue(importer.getChunkCount() > 100);
+        List<Item> items = loadAll(importer);
+        assertEquals(size, items.size());
+        for (Item item : items)
+            for (Tag tag : item.getTags())
+                assertSame(Tag.getInstance(tag.getName()), tag);
+
+        H2DBStore store = new H2DBStore(null);
+        store.open(true, false);
+        try {
+            assertEquals(Collections.emptyList(), store.addUpdateItems(items, false));
+            assertEquals(size, store.getItemCount());
+            assertEquals(503, store.getTagCount());
+            assertEquals(size / 500, store.getTagItemCount(Tag.getInstance(prefix + 0).getId()));
+            assertEquals(store.computeStats(), store.getStats());
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Prints the time it takes to parse a large file serially and in parallel.
+     * Skipped unless run with {@code -Ddleely.bench=true}.
+     */
+    @Test
+    public void benchParse() throws Exception {
+        assumeTrue("benchmarks run with -Ddleely.bench=true", Boolean.getBoolean("dleely.bench"));
+        int size = 200000;
+        writeDleelyCsv(size);
+
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            assertEquals(size, loadAll(CsvImporter.getDleelyInstance(filePath)).size());
+            long serial = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertEquals(size, loadAll(ParallelCsvImporter.getDleelyInstance(filePath)).size());
+            long parallel = System.nanoTime() - start;
+
+            System.out.printf("csv: %d records (%d MB), serial %4d ms, parallel %4d ms on %d cores%n",
+                    size, Files.size(filePath) >> 20, serial / 1000000, parallel / 1000000,
+                    Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
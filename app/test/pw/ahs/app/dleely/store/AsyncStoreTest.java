@@ -0,0 +1,89 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pw.ahs.app.dleely.model.Item;
+import pw.ahs.app.dleely.model.Tag;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.*;
+
+public class AsyncStoreTest {
+    private H2DBStore h2DBStore;
+    private AsyncStore asyncStore;
+
+    @Before
+    public void setUp() throws Exception {
+        h2DBStore = new H2DBStore(null);
+        h2DBStore.open(true, false);
+        asyncStore = new AsyncStore(h2DBStore, AsyncStore.newBoundedExecutor(1, 1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncStore.getExecutor().shutdownNow();
+        h2DBStore.close();
+    }
+
+    @Test
+    public void testCompose() throws Exception {
+        Tag tag = Tag.getInstance("async");
+        for (int i = 0; i < 3; ++i) {
+            Item item = new Item("async " + i, "async ref " + i);
+            item.getTags().add(tag);
+            assertTrue(h2DBStore.addUpdateItem(item, false));
+        }
+
+        // search, then count the items of the found tags
+        Map<Long, Long> counts = asyncStore.searchItems("async")
+                .thenCompose(items -> {
+                    assertEquals(3, items.size());
+                    return asyncStore.getTagItemCounts(items.iterator().next().getTags().iterator().next().getId());
+                })
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(Long.valueOf(3), counts.get(tag.getId()));
+    }
+
+    @Test
+    public void testCancelAndReject() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> blocking = asyncStore.submit(s -> {
+            release.await();
+            return null;
+        });
+
+        // waits for the only thread to be free
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Long> queued = asyncStore.submit(s -> {
+            ran.set(true);
+            return s.getItemCount();
+        });
+
+        // the queue is full now
+        CompletableFuture<Collection<Item>> rejected = asyncStore.getAllItems();
+        assertTrue(rejected.isCompletedExceptionally());
+
+        assertTrue(queued.cancel(false));
+        release.countDown();
+        blocking.get(10, TimeUnit.SECONDS);
+
+        // the cancelled call is skipped by the executor
+        asyncStore.getItemCount().get(10, TimeUnit.SECONDS);
+        assertFalse(ran.get());
+        assertTrue(queued.isCancelled());
+    }
+}
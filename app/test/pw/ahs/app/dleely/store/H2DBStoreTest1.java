@@ -13,13 +13,19 @@ import org.junit.Before;
 import org.junit.Test;
 import pw.ahs.app.dleely.Globals;
 import pw.ahs.app.dleely.model.Item;
+import pw.ahs.app.dleely.model.Tag;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
-import static junit.framework.Assert.assertEquals;
-import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.*;
 
 public class H2DBStoreTest1 {
     private Path baseDir;
@@ -69,4 +75,120 @@ public class H2DBStoreTest1 {
         // export
         // search items
     }
-}
+
+    private static int entryMethod(Path path) throws Exception {
+        try (ZipFile zf = new ZipFile(path.toFile())) {
+            return zf.getEntry("Dleely." + H2DBStore.H2DB_FILE_EXT).getMethod();
+        }
+    }
+
+    @Test
+    public void testContainerModes() throws Exception {
+        Path path = baseDir.resolve("container." + Globals.FILE_EXT);
+        Files.deleteIfExists(path);
+        H2DBStore store = new H2DBStore(path);
+
+        // stored by default
+        store.open(true, false);
+        store.addUpdateItems(Arrays.asList(
+                new Item("alpha", "ref a"),
+                new Item("beta", "ref b")
+        ), false);
+        store.close();
+        assertEquals(ZipEntry.STORED, entryMethod(path));
+
+        // browse in place
+        store.openReadOnly();
+        assertTrue(store.isReadOnly());
+        assertFalse(store.checkInappropriateClose());
+        assertEquals(2, store.getItemCount());
+        Collection<Item> items = new ArrayList<>();
+        store.searchItems(items, "beta", Globals.SEARCH_NAME_MASK);
+        assertEquals(1, items.size());
+        try {
+            store.addUpdateItem(new Item("name c", "ref c"), false);
+            fail("writes must fail");
+        } catch (Exception ignored) {
+        }
+        store.close();
+        assertFalse(store.isReadOnly());
+
+        // compressed on request, still readable both ways
+        store.setCompressed(true);
+        store.open(false, false);
+        store.addUpdateItem(new Item("name c", "ref c"), false);
+        store.close();
+        assertEquals(ZipEntry.DEFLATED, entryMethod(path));
+        store.openReadOnly();
+        assertEquals(3, store.getItemCount());
+        store.close();
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void testIncrementalSave() throws Exception {
+        Path path = baseDir.resolve("incremental." + Globals.FILE_EXT);
+        Path copyPath = baseDir.resolve("incremental-copy." + Globals.FILE_EXT);
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(copyPath);
+        H2DBStore store = new H2DBStore(path);
+        store.setCheckpointInterval(0);
+
+        store.open(true, false);
+        assertTrue(store.isModified());
+        Item alpha = new Item("alpha", "ref a");
+        alpha.getTags().add(Tag.getInstance("greek"));
+        store.addUpdateItems(Arrays.asList(alpha, new Item("beta", "ref b")), false);
+        store.close();
+
+        // nothing changed, the container is left alone
+        FileTime written = Files.getLastModifiedTime(path);
+        store.open(false, false);
+        assertFalse(store.isModified());
+        assertEquals(2, store.getItemCount());
+        store.close();
+        assertEquals(written, Files.getLastModifiedTime(path));
+
+        store.open(false, false);
+        store.addUpdateItem(new Item("gamma", "ref c"), false);
+        assertTrue(store.isModified());
+        store.checkpoint();
+        assertTrue(store.isModified());
+
+        // saving writes the container while the store stays open
+        store.save();
+        assertFalse(store.isModified());
+        H2DBStore saved = new H2DBStore(path);
+        saved.openReadOnly();
+        assertEquals(3, saved.getItemCount());
+        saved.close();
+        assertEquals(ZipEntry.STORED, entryMethod(path));
+
+        Item delta = new Item("delta", "ref d");
+        store.addUpdateItem(delta, false);
+        assertTrue(store.isModified());
+        assertTrue(store.removeItem(delta.getId()));
+        StoreStats stats = store.getStats();
+
+        // save as, the original is written as well
+        H2DBStore copy = new H2DBStore(copyPath);
+        store.saveAs(copy);
+        assertFalse(store.isOpened());
+        assertTrue(copy.isModified());
+        assertEquals(3, copy.getItemCount());
+        assertEquals(stats, copy.getStats());
+        assertEquals(1, copy.getTagItemCount(copy.getTagDictionary().getId("greek")));
+        copy.close();
+
+        store.openReadOnly();
+        assertEquals(3, store.getItemCount());
+        store.close();
+        copy.openReadOnly();
+        assertEquals(3, copy.getItemCount());
+        copy.close();
+
+        Files.delete(path);
+        Files.delete(copyPath);
+    }
+}
\ No newline at end of file
@@ -12,12 +12,22 @@ package pw.ahs.app.dleely.store;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import pw.ahs.app.dleely.importer.ImportConfigs;
 import pw.ahs.app.dleely.model.Item;
 import pw.ahs.app.dleely.model.Tag;
 
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 import static junit.framework.Assert.*;
+import static pw.ahs.app.dleely.Globals.*;
 
 public class H2DBStoreTest2 {
     private H2DBStore h2DBStore;
@@ -242,6 +252,81 @@ public class H2DBStoreTest2 {
         assertEquals(Arrays.asList(t1, t2), tags);
     }
 
+    @Test
+    public void testIdSetsInChunks() throws Exception {
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Item i3 = makeItem();
+        assertEquals(Collections.emptyList(), h2DBStore.addUpdateItems(Arrays.asList(i1, i2, i3), false));
+
+        // more ids than fit in one statement, most of them unknown
+        long[] ids = new long[25000];
+        for (int i = 0; i < ids.length; ++i) ids[i] = 1000000 + i;
+        ids[0] = i1.getId();
+        ids[ids.length - 1] = i3.getId();
+
+        Collection<Item> items = new ArrayList<>();
+        h2DBStore.loadItemsById(items, ids);
+        assertEquals(Arrays.asList(i1, i3), items);
+
+        IdBitmap removed = h2DBStore.removeItemsById(ids);
+        assertEquals(IdBitmap.of(i1.getId(), i3.getId()), removed);
+        assertEquals(1, h2DBStore.getItemCount());
+        assertEquals(IdBitmap.of(i2.getId()), h2DBStore.getTagIndex().getAllItems());
+        assertTrue(h2DBStore.removeItemsById(ids).isEmpty());
+    }
+
+    private void assertUntaggedAndUnused() throws Exception {
+        StoreStats stored = h2DBStore.computeStats();
+        assertEquals(stored.getUntaggedItemCount(), h2DBStore.getUntaggedItemCount());
+        assertEquals(stored.getUnusedTagCount(), h2DBStore.getUnusedTagCount());
+        assertEquals(stored.getUntaggedItemCount(), h2DBStore.searchItems(new ArrayList<>(), ":untagged"));
+        Collection<Tag> unused = new ArrayList<>();
+        h2DBStore.loadUnusedTags(unused);
+        assertEquals(stored.getUnusedTagCount(), unused.size());
+    }
+
+    @Test
+    public void testUntaggedAndUnused() throws Exception {
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Item i3 = makeItem();
+        i3.getTags().clear();
+        assertEquals(Collections.emptyList(), h2DBStore.addUpdateItems(Arrays.asList(i1, i2, i3), false));
+        Tag spare = makeTag();
+        assertTrue(h2DBStore.addUpdateTag(spare, false));
+        assertUntaggedAndUnused();
+        assertEquals(1, h2DBStore.getUntaggedItemCount());
+        assertEquals(1, h2DBStore.getUnusedTagCount());
+
+        // untag an item, its tags become unused
+        i1.getTags().clear();
+        assertTrue(h2DBStore.addUpdateItem(i1, true));
+        assertUntaggedAndUnused();
+        assertEquals(2, h2DBStore.getUntaggedItemCount());
+
+        h2DBStore.tagItems(new long[]{i1.getId(), i3.getId()}, new Tag[]{spare});
+        assertUntaggedAndUnused();
+        assertEquals(0, h2DBStore.getUntaggedItemCount());
+
+        // removing a tag may leave its items without tags
+        assertTrue(h2DBStore.removeTag(spare.getId()));
+        assertUntaggedAndUnused();
+        assertEquals(2, h2DBStore.getUntaggedItemCount());
+
+        Tag kept = i2.getTags().iterator().next();
+        for (Tag t : i2.getTags())
+            if (t != kept) assertTrue(h2DBStore.replaceTag(t.getId(), kept.getId()));
+        assertUntaggedAndUnused();
+
+        assertTrue(h2DBStore.removeItem(i2.getId()));
+        assertUntaggedAndUnused();
+        assertTrue(h2DBStore.removeUnusedTags() > 0);
+        assertUntaggedAndUnused();
+        assertEquals(0, h2DBStore.getUnusedTagCount());
+        assertEquals(0, h2DBStore.getTagCount());
+    }
+
     @Test
     public void testReplaceTag() throws Exception {
         Item[] i1 = new Item[]{makeItem()};
@@ -264,4 +349,575 @@ public class H2DBStoreTest2 {
         assertFalse(i1[0].getTags().contains(t2[0]));
         assertTrue(i1[0].getTags().contains(t3));
     }
+
+    @Test
+    public void testItemCursor() throws Exception {
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Item i3 = makeItem();
+        h2DBStore.addUpdateItems(Arrays.asList(i1, i2, i3), false);
+
+        // a fetch size smaller than the result spans several batches
+        Collection<Item> items = new ArrayList<>(3);
+        try (ItemCursor cursor = h2DBStore.openItemCursor(2)) {
+            while (cursor.hasNext()) items.add(cursor.next());
+        }
+        assertEquals(Arrays.asList(i1, i2, i3), items);
+        for (Item i : items)
+            assertEquals(2, i.getTags().size());
+
+        Tag t1 = i2.getTags().iterator().next();
+        try (ItemCursor cursor = h2DBStore.openItemCursor(t1.getName(), 10)) {
+            assertEquals(1, cursor.stream().filter(i -> i.equals(i2)).count());
+        }
+    }
+
+    @Test
+    public void testTagQueryCursor() throws Exception {
+        Tag common = Tag.getInstance("cursor");
+        List<Item> tagged = new ArrayList<>();
+        for (int i = 0; i < 25; ++i) {
+            Item item = new Item("cursor item " + i, "cursor ref " + i);
+            if (i % 5 != 0) {
+                item.getTags().add(common);
+                tagged.add(item);
+            }
+            assertTrue(h2DBStore.addUpdateItem(item, false));
+        }
+
+        // the ids of a tag query are bound a batch at a time, and the items come in id order
+        List<Item> items = new ArrayList<>();
+        try (ItemCursor cursor = h2DBStore.openItemCursor("cursor", 3)) {
+            while (cursor.hasNext()) items.add(cursor.next());
+        }
+        assertEquals(tagged, items);
+        for (Item i : items)
+            assertEquals(Collections.singleton(common), i.getTags());
+
+        try (ItemCursor cursor = h2DBStore.openItemCursor(":untagged", 2)) {
+            assertEquals(5, cursor.stream().count());
+        }
+
+        ItemCursor cursor = h2DBStore.openItemCursor("cursor", 3);
+        assertTrue(cursor.hasNext());
+        cursor.next();
+        cursor.close();
+        assertFalse(cursor.hasNext());
+
+        items.clear();
+        assertEquals(20, h2DBStore.searchItems(items, "cursor"));
+        assertEquals(tagged, items);
+    }
+
+    @Test
+    public void testStatementCache() throws Exception {
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Item i3 = makeItem();
+        assertTrue(h2DBStore.addUpdateItem(i1, false));
+        assertTrue(h2DBStore.addUpdateItem(i2, false));
+        assertTrue(h2DBStore.addUpdateItem(i3, false));
+
+        StatementCache cache = h2DBStore.getStatementCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        assertTrue(h2DBStore.removeItem(i1.getId()));
+        assertTrue(h2DBStore.removeItem(i2.getId()));
+        assertTrue(h2DBStore.removeItem(i3.getId()));
+
+        // the first call may prepare the statement, the rest must reuse it
+        assertTrue(cache.getMissCount() - misses <= 1);
+        assertTrue(cache.getHitCount() - hits >= 2);
+    }
+
+    @Test
+    public void testAddItemsRejected() throws Exception {
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        assertTrue(h2DBStore.addUpdateItem(i1, false));
+
+        Item dup = new Item("duplicate", i1.getRef());
+        Collection<String> rejected = h2DBStore.addUpdateItems(Arrays.asList(i2, dup), false, 1);
+        assertEquals(Collections.singletonList(i1.getRef()), rejected);
+        assertEquals(2, h2DBStore.getItemCount());
+
+        // ids and tags of bulk inserted items are resolved
+        Item tmp = h2DBStore.getItem(i2.getId());
+        assertNotNull(tmp);
+        assertEquals(i2.getTags(), tmp.getTags());
+        for (Tag t : i2.getTags())
+            assertEquals(t, h2DBStore.getTag(t.getId()));
+    }
+
+    @Test
+    public void testTagDictionary() throws Exception {
+        TagDictionary dictionary = h2DBStore.getTagDictionary();
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        assertTrue(h2DBStore.addUpdateItem(i1, false));
+        assertTrue(h2DBStore.addUpdateItem(i2, false));
+        for (Tag t : i1.getTags())
+            assertEquals(t.getId(), dictionary.getId(t.getName()));
+
+        // tagging with an existing and a new tag
+        Tag existing = i1.getTags().iterator().next();
+        Tag fresh = makeTag();
+        h2DBStore.tagItems(new long[]{i2.getId()}, new Tag[]{existing, fresh});
+        assertEquals(fresh.getId(), dictionary.getId(fresh.getName()));
+        assertTrue(h2DBStore.getItem(i2.getId()).getTags().containsAll(Arrays.asList(existing, fresh)));
+        assertEquals(2, h2DBStore.getTagItemCount(existing.getId()));
+
+        // rename
+        Tag renamed = Tag.getInstance("renamed" + fresh.getName());
+        renamed.setId(fresh.getId());
+        assertTrue(h2DBStore.addUpdateTag(renamed, true));
+        assertEquals(NULL_ID, dictionary.getId(fresh.getName()));
+        assertEquals(renamed.getId(), dictionary.getId(renamed.getName()));
+
+        // remove
+        assertTrue(h2DBStore.removeTag(renamed.getId()));
+        assertEquals(NULL_ID, dictionary.getId(renamed.getName()));
+
+        // unused tags are dropped from the dictionary too
+        h2DBStore.addUpdateTag(makeTag(), false);
+        h2DBStore.removeUnusedTags();
+        assertEquals(h2DBStore.getTagCount(), dictionary.size());
+    }
+
+    @Test
+    public void testCloseDuringReads() throws Exception {
+        h2DBStore.addUpdateItems(Arrays.asList(makeItem(), makeItem(), makeItem()), false);
+
+        // a query racing the close fails with an SQLException, never with a null or half-closed reader
+        final Exception[] error = {null};
+        final CountDownLatch reading = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    h2DBStore.getItemCount();
+                    h2DBStore.getAllItems();
+                    reading.countDown();
+                }
+            } catch (SQLException ignored) {
+            } catch (Exception e) {
+                error[0] = e;
+            }
+        });
+        reader.start();
+        reading.await();
+        h2DBStore.close();
+        reader.join();
+        assertNull(error[0]);
+    }
+
+    @Test
+    public void testReadDuringBulkWrite() throws Exception {
+        final int count = 2000;
+        final Collection<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+            items.add(new Item("bulk " + i, "bulk ref " + i));
+
+        final Exception[] error = {null};
+        Thread writer = new Thread(() -> {
+            try {
+                h2DBStore.addUpdateItems(items, false, count);
+            } catch (Exception e) {
+                error[0] = e;
+            }
+        });
+        writer.start();
+
+        // readers are not blocked by the open transaction and only see committed data
+        while (writer.isAlive()) {
+            long seen = h2DBStore.getItemCount();
+            assertTrue(seen == 0 || seen == count);
+        }
+        writer.join();
+        assertNull(error[0]);
+        assertEquals(count, h2DBStore.getItemCount());
+    }
+
+    @Test
+    public void testWriteDuringFailingBulkWrite() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // holds the bulk write in the middle of its transaction
+        Item blocking = new Item("blocking", "blocking ref") {
+            @Override
+            public String getInfo() {
+                if (writing.getCount() > 0) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return super.getInfo();
+            }
+        };
+        // a parent that does not exist fails the transaction once it is released
+        Tag orphan = Tag.getInstance("orphantag");
+        orphan.setParentId(Long.MAX_VALUE);
+        blocking.getTags().add(orphan);
+
+        final Exception[] error = {null, null};
+        Thread bulk = new Thread(() -> {
+            try {
+                h2DBStore.addUpdateItems(Collections.singletonList(blocking), false);
+            } catch (Exception e) {
+                error[0] = e;
+            }
+        });
+        Thread single = new Thread(() -> {
+            try {
+                h2DBStore.addUpdateItem(new Item("single", "single ref"), false);
+            } catch (Exception e) {
+                error[1] = e;
+            }
+        });
+        bulk.start();
+        writing.await();
+        single.start();
+
+        // the single write waits for the bulk write instead of joining its transaction
+        single.join(200);
+        assertTrue(single.isAlive());
+        release.countDown();
+        bulk.join();
+        single.join();
+        orphan.setParentId(NULL_ID);
+
+        assertTrue(error[0] instanceof SQLException);
+        assertNull(error[1]);
+        assertTrue(h2DBStore.itemExist("single ref", null));
+        assertFalse(h2DBStore.itemExist("blocking ref", null));
+        assertEquals(1, h2DBStore.getItemCount());
+    }
+
+    @Test
+    public void testFullTextSearch() throws Exception {
+        Item i1 = new Item("Dleely Home", "https://ahs.pw/dleely");
+        i1.setInfo("a bookmark manager");
+        Item i2 = new Item("Bookmarks", "https://example.com/home");
+        i2.getTags().add(Tag.getInstance("manager"));
+        assertTrue(h2DBStore.addUpdateItem(i1, false));
+        assertEquals(Collections.emptyList(), h2DBStore.addUpdateItems(Collections.singletonList(i2), false));
+
+        int all = SEARCH_NAME_MASK | SEARCH_URL_MASK | SEARCH_NOTES_MASK;
+        Collection<Item> found = new ArrayList<>();
+        assertEquals(2, h2DBStore.searchItems(found, "HOME", all));
+        found.clear();
+        assertEquals(1, h2DBStore.searchItems(found, "home", SEARCH_NAME_MASK));
+        assertEquals(i1, found.iterator().next());
+        found.clear();
+        assertEquals(1, h2DBStore.searchItems(found, "ahs dleely", SEARCH_URL_MASK));
+        found.clear();
+        assertEquals(0, h2DBStore.searchItems(found, "ahs example", all));
+        assertEquals(1, h2DBStore.searchItems(found, "manager", all));
+        found.clear();
+        assertEquals(2, h2DBStore.searchItems(found, "manager", all | SEARCH_TAG_MASK));
+        // one-letter terms have no indexed word and are searched as substrings
+        found.clear();
+        assertEquals(2, h2DBStore.searchItems(found, "k", all));
+        found.clear();
+        assertEquals(1, h2DBStore.searchItems(found, "d y", SEARCH_NAME_MASK));
+        assertEquals(i1, found.iterator().next());
+        found.clear();
+        assertEquals(0, h2DBStore.searchItems(found, "%", all));
+
+        // the index follows updates and removals
+        i1.setName("Renamed");
+        assertTrue(h2DBStore.addUpdateItem(i1, true));
+        found.clear();
+        assertEquals(1, h2DBStore.searchItems(found, "home", all));
+        assertTrue(h2DBStore.removeItems(i2.getId()));
+        found.clear();
+        assertEquals(0, h2DBStore.searchItems(found, "home", all));
+    }
+
+    @Test
+    public void testTagIndex() throws Exception {
+        TagBitmapIndex index = h2DBStore.getTagIndex();
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Item i3 = makeItem();
+        assertTrue(h2DBStore.addUpdateItem(i1, false));
+        assertEquals(Collections.emptyList(), h2DBStore.addUpdateItems(Arrays.asList(i2, i3), false));
+        Tag common = makeTag();
+        h2DBStore.tagItems(new long[]{i1.getId(), i2.getId()}, new Tag[]{common});
+
+        Collection<Tag> tags = h2DBStore.getAllTags();
+        for (Tag t : tags)
+            assertEquals(h2DBStore.getTagItemCount(t.getId()), index.getItemCount(t.getId()));
+
+        Tag t1 = i1.getTags().iterator().next();
+        Collection<Item> found = new ArrayList<>();
+        assertEquals(1, h2DBStore.searchItems(found, common.getName() + "  " + t1.getName().toUpperCase()));
+        assertEquals(i1, found.iterator().next());
+        found.clear();
+        assertEquals(2, h2DBStore.searchItems(found, common.getName()));
+
+        // updates, merges and removals
+        i1.getTags().remove(common);
+        assertTrue(h2DBStore.addUpdateItem(i1, true));
+        assertEquals(1, index.getItemCount(common.getId()));
+        h2DBStore.replaceTag(t1.getId(), common.getId());
+        assertEquals(0, index.getItemCount(t1.getId()));
+        assertEquals(2, index.getItemCount(common.getId()));
+        assertTrue(h2DBStore.removeTagWithItems(common.getId()));
+        assertEquals(Arrays.asList(i3.getId()), Arrays.asList(index.getAllItems().toArray()[0]));
+        assertTrue(index.getUntaggedItems().isEmpty());
+        for (Tag t : i3.getTags()) assertTrue(h2DBStore.removeTag(t.getId()));
+        assertEquals(IdBitmap.of(i3.getId()), index.getUntaggedItems());
+        assertTrue(h2DBStore.removeItem(i3.getId()));
+        assertTrue(index.getAllItems().isEmpty());
+    }
+
+    @Test
+    public void testCompleteTags() throws Exception {
+        String[][] itemTags = {{"java", "javafx"}, {"java", "jvm"}, {"javafx"}, {"java"}, {"javascript"}};
+        for (int i = 0; i < itemTags.length; ++i) {
+            Item item = new Item("item " + i, "complete ref " + i);
+            for (String name : itemTags[i]) item.getTags().add(Tag.getInstance(name));
+            assertTrue(h2DBStore.addUpdateItem(item, false));
+        }
+
+        Map<String, Long> completions = h2DBStore.completeTags("Jav", 2);
+        assertEquals(Arrays.asList("java", "javafx"), new ArrayList<>(completions.keySet()));
+        assertEquals(Long.valueOf(3), completions.get("java"));
+        assertEquals(Long.valueOf(2), completions.get("javafx"));
+
+        // ties are ordered by name
+        completions = h2DBStore.completeTags("j", 10);
+        assertEquals(Arrays.asList("java", "javafx", "javascript", "jvm"), new ArrayList<>(completions.keySet()));
+        assertTrue(h2DBStore.completeTags("x", 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchTags() throws Exception {
+        String[][] itemTags = {{"java", "javafx"}, {"java", "openjfx"}, {"ajax"}};
+        for (int i = 0; i < itemTags.length; ++i) {
+            Item item = new Item("item " + i, "search tags ref " + i);
+            for (String name : itemTags[i]) item.getTags().add(Tag.getInstance(name));
+            assertTrue(h2DBStore.addUpdateItem(item, false));
+        }
+
+        List<Tag> tags = new ArrayList<>();
+        Map<Long, Long> counts = h2DBStore.searchTags(tags, "JA");
+        Set<String> names = new HashSet<>();
+        for (Tag t : tags) names.add(t.getName());
+        assertEquals(new HashSet<>(Arrays.asList("java", "javafx", "ajax")), names);
+        assertEquals(Long.valueOf(2), counts.get(Tag.getInstance("java").getId()));
+
+        tags.clear();
+        h2DBStore.searchTags(tags, "fx");
+        assertEquals(2, tags.size());
+        assertNull(h2DBStore.searchTags(new ArrayList<>(), "xyz"));
+    }
+
+    @Test
+    public void testTagItemCounts() throws Exception {
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Tag common = makeTag();
+        i1.getTags().add(common);
+        i2.getTags().add(common);
+        assertEquals(Collections.emptyList(), h2DBStore.addUpdateItems(Arrays.asList(i1, i2), false));
+
+        Collection<Tag> tags = new ArrayList<>();
+        Map<Long, Long> listed = h2DBStore.searchTags(tags, "");
+        assertEquals(tags.size(), listed.size());
+
+        long[] ids = new long[tags.size() + 1];
+        int i = 0;
+        for (Tag t : tags) ids[i++] = t.getId();
+        ids[i] = Long.MAX_VALUE; // unknown tag
+        Map<Long, Long> counts = h2DBStore.getTagItemCounts(ids);
+        assertEquals(Long.valueOf(2), counts.get(common.getId()));
+        assertEquals(Long.valueOf(0), counts.get(Long.MAX_VALUE));
+        for (Tag t : tags)
+            assertEquals(counts.get(t.getId()), listed.get(t.getId()));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        StoreStats empty = h2DBStore.getStats();
+        assertEquals(h2DBStore.computeStats(), empty);
+        assertEquals(NULL_ID, empty.getMostTaggedItemId());
+        assertEquals(NULL_ID, empty.getMostUsedTagId());
+
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Item i3 = makeItem();
+        Tag common = makeTag();
+        i1.getTags().add(common);
+        i2.getTags().add(common);
+        i3.getTags().clear();
+        assertEquals(Collections.emptyList(), h2DBStore.addUpdateItems(Arrays.asList(i1, i2, i3), false));
+        StoreStats stats = h2DBStore.getStats();
+        assertEquals(h2DBStore.computeStats(), stats);
+        assertSame(stats, h2DBStore.getStats());
+        assertEquals(3, stats.getItemCount());
+        assertEquals(1, stats.getUntaggedItemCount());
+        assertEquals(common.getId(), stats.getMostUsedTagId());
+        assertEquals(2, stats.getMostUsedTagItemCount());
+        assertEquals(Math.min(i1.getId(), i2.getId()), stats.getMostTaggedItemId());
+        assertEquals(3, stats.getMostTaggedItemTagCount());
+
+        Tag unused = makeTag();
+        assertTrue(h2DBStore.addUpdateTag(unused, false));
+        assertEquals(1, h2DBStore.getStats().getUnusedTagCount());
+        assertEquals(h2DBStore.computeStats(), h2DBStore.getStats());
+
+        h2DBStore.tagItems(new long[]{i3.getId()}, new Tag[]{common, unused});
+        assertEquals(0, h2DBStore.getStats().getUntaggedItemCount());
+        assertEquals(h2DBStore.computeStats(), h2DBStore.getStats());
+
+        h2DBStore.replaceTag(unused.getId(), common.getId());
+        assertEquals(h2DBStore.computeStats(), h2DBStore.getStats());
+
+        assertTrue(h2DBStore.removeItem(i1.getId()));
+        assertEquals(h2DBStore.computeStats(), h2DBStore.getStats());
+
+        h2DBStore.removeUnusedTags();
+        assertEquals(0, h2DBStore.getStats().getUnusedTagCount());
+        assertEquals(h2DBStore.computeStats(), h2DBStore.getStats());
+
+        StoreStats before = h2DBStore.getStats();
+        h2DBStore.reloadStats();
+        assertEquals(before, h2DBStore.getStats());
+    }
+
+    @Test
+    public void testDateHistogram() throws Exception {
+        Item i1 = makeItem();
+        Item i2 = makeItem();
+        Item i3 = makeItem();
+        i1.setDateAdd(LocalDateTime.of(2013, 12, 31, 23, 0));
+        i2.setDateAdd(LocalDateTime.of(2014, 1, 2, 10, 0));
+        i3.setDateAdd(LocalDateTime.of(2014, 1, 2, 11, 0));
+        assertEquals(Collections.emptyList(), h2DBStore.addUpdateItems(Arrays.asList(i1, i2), false));
+        assertTrue(h2DBStore.addUpdateItem(i3, false));
+
+        Map<LocalDate, Long> days = new LinkedHashMap<>();
+        days.put(LocalDate.of(2013, 12, 31), 1L);
+        days.put(LocalDate.of(2014, 1, 2), 2L);
+        assertEquals(days, h2DBStore.getDateHistogram(DateHistogram.Field.ADDED, DateHistogram.Bucket.DAY));
+        assertEquals(days, h2DBStore.getDateTimeCountMap());
+        // both dates fall in the week starting on Monday, 2013-12-30
+        assertEquals(Collections.singletonMap(LocalDate.of(2013, 12, 30), 3L),
+                h2DBStore.getDateHistogram(DateHistogram.Field.ADDED, DateHistogram.Bucket.WEEK));
+        Map<LocalDate, Long> years = new LinkedHashMap<>();
+        years.put(LocalDate.of(2013, 1, 1), 1L);
+        years.put(LocalDate.of(2014, 1, 1), 2L);
+        assertEquals(years, h2DBStore.getDateHistogram(DateHistogram.Field.ADDED, DateHistogram.Bucket.YEAR));
+
+        // writes after the histogram is cached
+        i2.setDateAdd(LocalDateTime.of(2014, 3, 1, 0, 0));
+        assertTrue(h2DBStore.addUpdateItem(i2, true));
+        assertTrue(h2DBStore.removeItem(i1.getId()));
+        Map<LocalDate, Long> months = new LinkedHashMap<>();
+        months.put(LocalDate.of(2014, 1, 1), 1L);
+        months.put(LocalDate.of(2014, 3, 1), 1L);
+        assertEquals(months, h2DBStore.getDateHistogram(DateHistogram.Field.ADDED, DateHistogram.Bucket.MONTH));
+
+        long total = 0;
+        for (long count : h2DBStore.getDateHistogram(DateHistogram.Field.MODIFIED, DateHistogram.Bucket.YEAR).values())
+            total += count;
+        assertEquals(2, total);
+    }
+
+    @Test
+    public void testPipelinedImport() throws Exception {
+        // more than one batch, with refs repeated across batches and refs already stored
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 2500; ++i)
+            csv.append(String.format("\"item %d\",\"ref %d\",\"info %d\",\"0\",\"t%d u%d\",\"1343919044665\",\"\"%n",
+                    i, i % 2000, i, i % 7, i % 5));
+
+        H2DBStore pipelinedStore = new H2DBStore(null);
+        pipelinedStore.open(true, false);
+        try {
+            Map<String, Item> expected = new HashMap<>();
+            Map<String, Item> actual = new HashMap<>();
+            int[] expectedCounts = importCsv(h2DBStore, csv.toString(), false, expected);
+            int[] actualCounts = importCsv(pipelinedStore, csv.toString(), true, actual);
+
+            assertEquals(1990, expectedCounts[0]);
+            assertEquals(510, expectedCounts[1]);
+            assertTrue(Arrays.equals(expectedCounts, actualCounts));
+            assertEquals(2000, pipelinedStore.getItemCount());
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Item item : expected.values()) {
+                Item other = actual.get(item.getRef());
+                assertEquals(item.getName(), other.getName());
+                assertEquals(item.getInfo(), other.getInfo());
+                assertEquals(item.getTags(), other.getTags());
+            }
+            // tag ids depend on the order the tags were first written, so only the counts are compared
+            assertEquals(h2DBStore.getStats().getTagCount(), pipelinedStore.getStats().getTagCount());
+            assertEquals(pipelinedStore.computeStats(), pipelinedStore.getStats());
+        } finally {
+            pipelinedStore.close();
+        }
+    }
+
+    @Test
+    public void testParallelImport() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 2500; ++i)
+            csv.append(String.format("\"item %d\",\"ref %d\",\"info\n%d\",\"0\",\"t%d\",\"\",\"\"%n", i, i % 2000, i, i % 7));
+        Path csvPath = Files.createTempFile("dleely", ".csv");
+        try {
+            Files.write(csvPath, csv.toString().getBytes(StandardCharsets.UTF_8));
+            ImportConfigs importConfigs = new ImportConfigs();
+            importConfigs.setPipelined(true);
+            importConfigs.setParallel(true);
+            assertEquals(2500, h2DBStore.importItems(csvPath, FileFormat.DLEELY_CVS, importConfigs, null, null, null));
+            assertEquals(2000, h2DBStore.getItemCount());
+        } finally {
+            Files.delete(csvPath);
+        }
+    }
+
+    @Test
+    public void testCancelledPipelinedImport() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 5000; ++i)
+            csv.append(String.format("\"item %d\",\"ref %d\",\"info %d\",\"0\",\"t%d\",\"\",\"\"%n", i, i, i, i % 7));
+        ImportConfigs importConfigs = new ImportConfigs();
+        importConfigs.setPipelined(true);
+        int[] added = new int[1];
+        // cancelled once the first batch is committed, so only the committed items are counted
+        long imported = h2DBStore.importItems(new StringReader(csv.toString()), FileFormat.DLEELY_CVS, importConfigs,
+                null, item -> {
+                    if (++added[0] == 1) h2DBStore.cancel();
+                }, null);
+        assertTrue(imported > 0 && imported < 5000);
+        assertEquals(added[0], imported);
+        assertEquals(h2DBStore.getItemCount(), imported);
+    }
+
+    /**
+     * @return the number of added items and the number of collisions
+     */
+    private int[] importCsv(H2DBStore store, String csv, boolean pipelined, Map<String, Item> stored) throws Exception {
+        List<Item> existing = new ArrayList<>();
+        for (int i = 10; i < 20; ++i) existing.add(new Item("old " + i, "ref " + i));
+        assertEquals(Collections.emptyList(), store.addUpdateItems(existing, false));
+
+        ImportConfigs importConfigs = new ImportConfigs();
+        importConfigs.setPipelined(pipelined);
+        int[] counts = new int[2];
+        assertEquals(2500, store.importItems(new StringReader(csv), FileFormat.DLEELY_CVS, importConfigs, null,
+                item -> ++counts[0],
+                (oldItem, newItem) -> ++counts[1]));
+
+        Collection<Item> items = new ArrayList<>();
+        store.loadAllItems(items);
+        for (Item item : items) stored.put(item.getRef(), item);
+        return counts;
+    }
 }
@@ -18,6 +18,7 @@ import pw.ahs.app.dleely.model.Tag;
 import java.util.*;
 
 import static junit.framework.Assert.*;
+import static pw.ahs.app.dleely.Globals.NULL_ID;
 
 public class H2DBStoreTest3 {
     private H2DBStore h2DBStore;
@@ -124,6 +125,25 @@ public class H2DBStoreTest3 {
         h2DBStore.loadAllItems(items, 2, 3);
         assertEquals(2, items.size());
 
+        // load items page by page
+        items.clear();
+        long token = h2DBStore.loadItemsPage(items, NULL_ID, 2);
+        assertEquals(2, items.size());
+        token = h2DBStore.loadItemsPage(items, token, 2);
+        assertEquals(4, items.size());
+        token = h2DBStore.loadItemsPage(items, token, 2);
+        assertEquals(5, items.size());
+        assertEquals(NULL_ID, token);
+
+        // a cancelled page resumes where it stopped instead of reporting the end
+        items.clear();
+        h2DBStore.cancel();
+        token = h2DBStore.loadItemsPage(items, NULL_ID, 2);
+        assertTrue(items.isEmpty());
+        assertTrue(token != NULL_ID);
+        h2DBStore.loadItemsPage(items, token, 2);
+        assertEquals(2, items.size());
+
         // load all tags
         tags.clear();
         h2DBStore.loadAllTags(tags);
@@ -134,6 +154,14 @@ public class H2DBStoreTest3 {
         h2DBStore.loadAllTags(tags, 2, 3);
         assertEquals(2, tags.size());
 
+        // load tags page by page
+        tags.clear();
+        token = NULL_ID;
+        do {
+            token = h2DBStore.loadTagsPage(tags, token, 3);
+        } while (token != NULL_ID);
+        assertEquals(10, tags.size());
+
         // load unused tags
         tags.clear();
         h2DBStore.loadUnusedTags(tags);
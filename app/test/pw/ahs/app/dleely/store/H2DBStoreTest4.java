@@ -0,0 +1,193 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pw.ahs.app.dleely.Globals;
+import pw.ahs.app.dleely.importer.ImportConfigs;
+import pw.ahs.app.dleely.model.Item;
+import pw.ahs.app.dleely.model.Tag;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmarks (prints timings) for operations that scale with the library size.
+ * They are skipped unless run with {@code -Ddleely.bench=true}.
+ */
+public class H2DBStoreTest4 {
+    private static final int[] SIZES = {1000, 4000, 16000};
+    private static final int TAG_POOL = 200;
+    private static final int TAGS_PER_ITEM = 3;
+
+    private Path filePath;
+    private H2DBStore h2DBStore;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("benchmarks run with -Ddleely.bench=true", Boolean.getBoolean("dleely.bench"));
+        Path baseDir = Paths.get(System.getProperty("java.io.tmpdir")).normalize();
+        filePath = baseDir.resolve("bench." + Globals.FILE_EXT);
+        h2DBStore = new H2DBStore(filePath);
+        h2DBStore.open(true, false);
+        random = new Random(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (h2DBStore == null) return;
+        h2DBStore.close();
+        Files.deleteIfExists(filePath);
+    }
+
+    private Collection<Item> makeItems(int from, int to) {
+        Collection<Item> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; ++i) {
+            Item tmp = new Item("item " + i, "ref " + i);
+            tmp.setInfo("info " + i);
+            while (tmp.getTags().size() < TAGS_PER_ITEM)
+                tmp.getTags().add(Tag.getInstance("bench" + random.nextInt(TAG_POOL)));
+            items.add(tmp);
+        }
+        return items;
+    }
+
+    @Test
+    public void benchOpen() throws Exception {
+        int count = 0;
+        for (int size : SIZES) {
+            h2DBStore.addUpdateItems(makeItems(count, size), false);
+            h2DBStore.close();
+            count = size;
+
+            // open time: open the file then load every item with its tags
+            Collection<Item> items = new ArrayList<>(size);
+            long start = System.nanoTime();
+            h2DBStore.open(false, false);
+            h2DBStore.loadAllItems(items);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(size, items.size());
+            for (Item item : items)
+                assertEquals(TAGS_PER_ITEM, item.getTags().size());
+
+            System.out.printf("open: %6d items in %5d ms%n", size, elapsed / 1000000);
+        }
+    }
+
+    @Test
+    public void benchSave() throws Exception {
+        int size = SIZES[SIZES.length - 1];
+        Collection<Item> items = makeItems(0, size);
+
+        long start = System.nanoTime();
+        h2DBStore.addUpdateItems(items, false);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(size, h2DBStore.getItemCount());
+        System.out.printf("addUpdateItems: %6d items in %5d ms%n", size, elapsed / 1000000);
+    }
+
+    @Test
+    public void benchSaveAs() throws Exception {
+        int size = SIZES[SIZES.length - 1];
+        h2DBStore.addUpdateItems(makeItems(0, size), false);
+        Path copyPath = filePath.resolveSibling("bench-copy." + Globals.FILE_EXT);
+
+        // save as: both files are written
+        H2DBStore copy = new H2DBStore(copyPath);
+        long start = System.nanoTime();
+        h2DBStore.saveAs(copy);
+        copy.close();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("save as: %6d items in %5d ms%n", size, elapsed / 1000000);
+
+        // save after a small edit: a checkpoint
+        copy.open(false, false);
+        assertEquals(size, copy.getItemCount());
+        copy.addUpdateItems(makeItems(size, size + 10), false);
+        start = System.nanoTime();
+        copy.checkpoint();
+        elapsed = System.nanoTime() - start;
+        System.out.printf("save: 10 items added to %6d in %5d ms%n", size, elapsed / 1000000);
+        copy.close();
+        Files.deleteIfExists(copyPath);
+    }
+
+    @Test
+    public void benchImport() throws Exception {
+        int size = SIZES[SIZES.length - 1];
+        StringBuilder csv = new StringBuilder();
+        for (Item item : makeItems(0, size))
+            csv.append(String.format("\"%s\",\"%s\",\"%s\",\"0\",\"%s\",\"\",\"\"%n",
+                    item.getName(), item.getRef(), item.getInfo(), item.getTagsText(" ")));
+
+        for (boolean pipelined : new boolean[]{false, true}) {
+            H2DBStore store = new H2DBStore(null);
+            store.open(true, false);
+            ImportConfigs importConfigs = new ImportConfigs();
+            importConfigs.setPipelined(pipelined);
+
+            long start = System.nanoTime();
+            store.importItems(new StringReader(csv.toString()), Globals.FileFormat.DLEELY_CVS, importConfigs, null, null, null);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(size, store.getItemCount());
+            store.close();
+            System.out.printf("import (%s): %6d items in %5d ms%n", pipelined ? "pipelined" : "serial", size, elapsed / 1000000);
+        }
+    }
+
+    @Test
+    public void benchTagIntersection() throws Exception {
+        // one million links over 200k items, tag popularity is skewed
+        TagBitmapIndex index = new TagBitmapIndex();
+        int itemCount = 200000;
+        for (long item = 1; item <= itemCount; ++item) {
+            index.addItem(item);
+            for (int i = 0; i < 5; ++i)
+                index.addLink(item, (long) Math.abs(random.nextGaussian() * TAG_POOL) + 1);
+        }
+
+        int rounds = 1000;
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; ++i)
+            found += index.intersect(1 + random.nextInt(TAG_POOL), 1 + random.nextInt(10)).cardinality();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("intersect: 2 tags over 1M links in %5d us on average (%d found)%n", elapsed / rounds / 1000, found);
+
+        // a compound query costs about the same as its most selective tag
+        TagDictionary dictionary = new TagDictionary();
+        for (long id = 1; id <= TAG_POOL * 4; ++id) dictionary.put(id, "t" + id);
+        found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; ++i) {
+            String query = String.format("t%d -t%d (t%d OR t%d)",
+                    1 + random.nextInt(TAG_POOL), 1 + random.nextInt(10), 1 + random.nextInt(10), 1 + random.nextInt(10));
+            found += TagQuery.parse(query).evaluate(index, dictionary).cardinality();
+        }
+        elapsed = System.nanoTime() - start;
+
+        System.out.printf("query: \"a -b (c OR d)\" over 1M links in %5d us on average (%d found)%n", elapsed / rounds / 1000, found);
+    }
+}
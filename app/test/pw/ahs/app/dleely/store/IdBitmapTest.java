@@ -0,0 +1,97 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static junit.framework.Assert.*;
+
+public class IdBitmapTest {
+
+    private static long[] toArray(Set<Long> set) {
+        long[] ids = new long[set.size()];
+        int i = 0;
+        for (long id : set) ids[i++] = id;
+        return ids;
+    }
+
+    /**
+     * @param density the chance of each id in the range to be included, high values produce dense chunks
+     */
+    private static TreeSet<Long> randomSet(Random random, long range, double density) {
+        TreeSet<Long> set = new TreeSet<>();
+        for (long id = 1; id < range; ++id)
+            if (random.nextDouble() < density) set.add(id);
+        return set;
+    }
+
+    private static IdBitmap toBitmap(Set<Long> set) {
+        IdBitmap bitmap = new IdBitmap();
+        for (long id : set) bitmap.add(id);
+        return bitmap;
+    }
+
+    @Test
+    public void testSetOperations() {
+        Random random = new Random(0);
+        double[] densities = {0.001, 0.05, 0.5, 0.9};
+        for (double d1 : densities) {
+            for (double d2 : densities) {
+                TreeSet<Long> s1 = randomSet(random, 200000, d1);
+                TreeSet<Long> s2 = randomSet(random, 200000, d2);
+                IdBitmap b1 = toBitmap(s1);
+                IdBitmap b2 = toBitmap(s2);
+                assertTrue(Arrays.equals(toArray(s1), b1.toArray()));
+                assertEquals(s1.size(), b1.cardinality());
+
+                TreeSet<Long> and = new TreeSet<>(s1);
+                and.retainAll(s2);
+                assertTrue(Arrays.equals(toArray(and), b1.and(b2).toArray()));
+
+                TreeSet<Long> or = new TreeSet<>(s1);
+                or.addAll(s2);
+                assertTrue(Arrays.equals(toArray(or), b1.or(b2).toArray()));
+
+                TreeSet<Long> andNot = new TreeSet<>(s1);
+                andNot.removeAll(s2);
+                assertTrue(Arrays.equals(toArray(andNot), b1.andNot(b2).toArray()));
+
+                // operations do not modify their operands
+                assertTrue(Arrays.equals(toArray(s1), b1.toArray()));
+                assertTrue(Arrays.equals(toArray(s2), b2.toArray()));
+            }
+        }
+    }
+
+    @Test
+    public void testAddRemove() {
+        IdBitmap bitmap = new IdBitmap();
+        TreeSet<Long> set = new TreeSet<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 50000; ++i) {
+            long id = random.nextInt(20000) + (random.nextBoolean() ? 0 : 1L << 33);
+            if (random.nextInt(3) == 0) {
+                set.remove(id);
+                bitmap.remove(id);
+            } else {
+                set.add(id);
+                bitmap.add(id);
+            }
+        }
+        assertTrue(Arrays.equals(toArray(set), bitmap.toArray()));
+        for (long id : set) assertTrue(bitmap.contains(id));
+        assertFalse(bitmap.contains(30000));
+
+        for (long id : set) bitmap.remove(id);
+        assertTrue(bitmap.isEmpty());
+    }
+}
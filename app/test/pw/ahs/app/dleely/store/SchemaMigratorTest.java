@@ -0,0 +1,84 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class SchemaMigratorTest {
+    private Connection con;
+    private Map<String, String> sql;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        con = DriverManager.getConnection("jdbc:h2:mem:");
+        sql = SQLLoader.getInstance().sql;
+
+        // a database created before schema versioning
+        PreparedStatement ps = con.prepareStatement(sql.get("create_db"));
+        ps.execute();
+        ps.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        con.close();
+    }
+
+    @Test
+    public void testMigrate() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(con, sql);
+        int latest = migrator.getLatestVersion();
+        assertTrue(latest > 0);
+        assertEquals(0, migrator.getVersion());
+
+        assertEquals(latest, migrator.migrate());
+        assertEquals(latest, migrator.getVersion());
+
+        // migrations run once
+        assertEquals(0, migrator.migrate());
+        assertEquals(latest, migrator.getVersion());
+
+        Set<String> indexes = new HashSet<>();
+        ResultSet rs = con.createStatement().executeQuery("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES");
+        while (rs.next())
+            indexes.add(rs.getString(1).toLowerCase());
+        rs.close();
+        assertTrue(indexes.contains("idx_tag_item_tag"));
+        assertTrue(indexes.contains("idx_tag_parent"));
+        assertTrue(indexes.contains("idx_item_dateadd"));
+        assertTrue(indexes.contains("idx_item_datemod"));
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(con, sql);
+        con.setReadOnly(true);
+        // reading the version of a database created before versioning writes nothing
+        assertEquals(0, migrator.getVersion());
+        ResultSet rs = con.getMetaData().getTables(null, null, "SCHEMA_VERSION", null);
+        assertFalse(rs.next());
+        rs.close();
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ Copyright (c) 2014 - Anas H. Sulaiman (ahs.pw)
+
+ This file is part of Dleely.
+ Dleely is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ ******************************************************************************/
+
+package pw.ahs.app.dleely.store;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TagQueryTest {
+    private TagBitmapIndex index;
+    private TagDictionary dictionary;
+
+    @Before
+    public void setUp() {
+        index = new TagBitmapIndex();
+        dictionary = new TagDictionary();
+        String[] names = {"java", "android", "jvm", "gc", "kotlin"};
+        for (int i = 0; i < names.length; ++i) dictionary.put(i + 1, names[i]);
+
+        // item -> tags
+        long[][] links = {
+                {1, 1}, {1, 3},         // java jvm
+                {2, 1}, {2, 2}, {2, 3}, // java android jvm
+                {3, 1}, {3, 4},         // java gc
+                {4, 5}, {4, 3},         // kotlin jvm
+                {5, 1},                 // java
+        };
+        for (long item = 1; item <= 6; ++item) index.addItem(item); // 6 is untagged
+        for (long[] link : links) index.addLink(link[0], link[1]);
+    }
+
+    private String eval(String query) {
+        return TagQuery.parse(query).evaluate(index, dictionary).toString();
+    }
+
+    @Test
+    public void testOperators() {
+        assertEquals("[1, 2, 3, 5]", eval("java"));
+        assertEquals("[1, 2]", eval("java jvm"));
+        assertEquals("[1, 2]", eval("JAVA  jvm"));
+        assertEquals("[1, 2, 3, 4]", eval("jvm OR gc"));
+        assertEquals("[1, 2, 3, 4]", eval("jvm | gc"));
+        assertEquals("[1, 3, 5]", eval("java -android"));
+        assertEquals("[1, 3, 5]", eval("java NOT android"));
+        assertEquals("[1, 3]", eval("java -android (jvm OR gc)"));
+        assertEquals("[3, 4, 5, 6]", eval("-(java jvm)"));
+        assertEquals("[1, 2, 4]", eval("java jvm OR kotlin"));
+        assertEquals("[6]", eval(":untagged"));
+        assertEquals("[5, 6]", eval(":untagged OR (java -jvm -gc)"));
+        assertEquals("[]", eval("java unknown"));
+        assertEquals("[1, 2, 3, 4, 5]", eval("unknown OR java OR kotlin"));
+    }
+
+    @Test
+    public void testIncompleteInput() {
+        assertEquals("[1, 3]", eval("java -android (jvm OR gc"));
+        assertEquals("[1, 2, 3, 5]", eval("java OR"));
+        assertEquals("[1, 2, 3, 5]", eval("java -"));
+        assertEquals("[1, 2, 3, 5]", eval("java )"));
+        assertEquals("[]", eval("("));
+    }
+}